@@ -0,0 +1,62 @@
+package UnitTest;
+
+import org.junit.*;
+import static org.junit.Assert.* ;
+
+import Ziggurat.Action;
+import Ziggurat.ActionGraph;
+import Ziggurat.Sequence;
+
+/**
+ * ActionGraphTest
+ * 
+ * This JUnit test checks if ActionGraph is working correctly.
+ */
+public class ActionGraphTest
+{
+	// BEGIN Test cases --------------------------------------
+	
+	@Test
+	public void test_addEdge()
+    {
+        ActionGraph graph = new ActionGraph(1);
+        Action a12 = new Action(SequenceEpisodeTest.seep1, SequenceEpisodeTest.seep2);
+        Action a13 = new Action(SequenceEpisodeTest.seep1, SequenceEpisodeTest.seep3);
+        Action a23 = new Action(SequenceEpisodeTest.seep2, SequenceEpisodeTest.seep3);
+        graph.addEdge(a12);
+        graph.addEdge(a13);
+        graph.addEdge(a23);
+
+        assertTrue(graph.numNodes() == 3);
+        assertTrue(graph.numEdges() == 3);
+        int n1 = graph.findNode(SequenceTest.sEE1);
+        int n2 = graph.findNode(SequenceTest.sEE2);
+        int n3 = graph.findNode(SequenceTest.sEE3);
+        assertTrue(graph.getSequence(n2) == SequenceTest.sEE2);
+
+        //edges are kept in the order they were added
+        assertTrue(graph.numEdges(n1) == 2);
+        assertTrue(graph.getTarget(n1, 0) == n2);
+        assertTrue(graph.getTarget(n1, 1) == n3);
+        assertTrue(graph.getAction(n1, 1) == a13);
+        assertTrue(graph.getWeight(n1, 0) == SequenceTest.sEE2.numElementalEpisodes());
+        assertTrue(graph.numEdges(n2) == 1);
+        assertTrue(graph.numEdges(n3) == 0);
+
+        //unknown sequences have no node
+        assertTrue(graph.findNode(new Sequence()) == -1);
+	}
+
+	// END Test cases --------------------------------------
+
+    /**
+     * An easy way to run this test individually from the command line without
+     * the JUnit jar file
+     */
+    public static void main(String[] args)
+    {
+        ActionGraphTest agt = new ActionGraphTest();
+        agt.test_addEdge();
+    }
+	
+}//class ActionGraphTest
@@ -0,0 +1,145 @@
+package UnitTest;
+
+import java.util.Random;
+
+import org.junit.*;
+import static org.junit.Assert.* ;
+
+import Ziggurat.ApproximateMatcher;
+
+/**
+ * ApproximateMatcherTest
+ * 
+ * This JUnit test checks if ApproximateMatcher is working correctly by
+ * comparing it to the usual dynamic programming search.
+ */
+public class ApproximateMatcherTest
+{
+    /**
+     * helper that finds the fewest errors of any occurrence of pattern that
+     * ends at each position in text via dynamic programming
+     */
+    public static int[] bruteForce(int[] pattern, int[] text, int textLen)
+    {
+        int m = pattern.length;
+        int[] col = new int[m + 1];
+        for(int i = 0; i <= m; i++) col[i] = i;
+
+        int[] result = new int[textLen];
+        for(int j = 0; j < textLen; j++)
+        {
+            int diag = col[0];   // an occurrence may start anywhere
+            for(int i = 1; i <= m; i++)
+            {
+                int up = col[i];
+                int cost = (pattern[i-1] == text[j]) ? 0 : 1;
+                col[i] = Math.min(Math.min(col[i] + 1, col[i-1] + 1), diag + cost);
+                diag = up;
+            }
+            result[j] = col[m];
+        }
+
+        return result;
+    }
+
+    /**
+     * helper that finds the edit distance between pattern and text[from..to]
+     */
+    public static int editDistance(int[] pattern, int[] text, int from, int to)
+    {
+        int m = pattern.length;
+        int[] col = new int[m + 1];
+        for(int i = 0; i <= m; i++) col[i] = i;
+
+        for(int j = from; j <= to; j++)
+        {
+            int diag = col[0];
+            col[0] = j - from + 1;
+            for(int i = 1; i <= m; i++)
+            {
+                int up = col[i];
+                int cost = (pattern[i-1] == text[j]) ? 0 : 1;
+                col[i] = Math.min(Math.min(col[i] + 1, col[i-1] + 1), diag + cost);
+                diag = up;
+            }
+        }
+
+        return col[m];
+    }
+    
+	// BEGIN Test cases --------------------------------------
+	
+	@Test
+	public void test_simple()
+    {
+        //A,B,R,A,C,A,D,A,B,X,A,C,A  (one substitution from ABRACA)
+        int[] text = { 0, 1, 17, 0, 2, 0, 3, 0, 1, 23, 0, 2, 0 };
+        ApproximateMatcher matcher = new ApproximateMatcher(text, 7, 6);
+        assertTrue(matcher.length() == 6);
+
+        //no exact match earlier
+        assertTrue(matcher.findBest(text, 11, 0) == null);
+
+        ApproximateMatcher.Match match = matcher.findBest(text, 11, 2);
+        assertTrue(match.errors == 1);
+        assertTrue(match.end == 5);
+        assertTrue(match.start == 0);
+        assertTrue(match.length() == 6);
+	}
+
+	@Test
+	public void test_random()
+    {
+        Random rand = new Random(42);
+        for(int alphabet = 2; alphabet <= 4; alphabet++)
+        {
+            for(int m = 1; m <= ApproximateMatcher.MAX_WINDOW; m += 9)
+            {
+                int[] text = new int[200];
+                for(int i = 0; i < text.length; i++) text[i] = rand.nextInt(alphabet);
+                int[] pattern = new int[m];
+                for(int i = 0; i < m; i++) pattern[i] = rand.nextInt(alphabet);
+
+                ApproximateMatcher matcher = new ApproximateMatcher(pattern, 0, m);
+                int[] expected = bruteForce(pattern, text, text.length);
+                for(int maxErrors = 0; maxErrors <= m; maxErrors += 3)
+                {
+                    //the earliest occurrence with the fewest errors
+                    int bestEnd = -1;
+                    for(int j = 0; j < text.length; j++)
+                    {
+                        if (expected[j] > maxErrors) continue;
+                        if ((bestEnd == -1) || (expected[j] < expected[bestEnd])) bestEnd = j;
+                    }
+
+                    ApproximateMatcher.Match match = matcher.findBest(text, text.length - 1, maxErrors);
+                    if (bestEnd == -1)
+                    {
+                        assertTrue(match == null);
+                    }
+                    else
+                    {
+                        assertTrue(match.end == bestEnd);
+                        assertTrue(match.errors == expected[bestEnd]);
+                        assertTrue(match.start <= match.end);
+                        assertTrue(editDistance(pattern, text, match.start, match.end) == match.errors);
+                    }
+                }
+            }
+        }
+	}
+
+	// END Test cases --------------------------------------
+
+    /**
+     * An easy way to run this test individually from the command line without
+     * the JUnit jar file
+     */
+    public static void main(String[] args)
+    {
+        ApproximateMatcherTest amt = new ApproximateMatcherTest();
+        amt.test_simple();
+        amt.test_random();
+    }
+	
+}//class ApproximateMatcherTest
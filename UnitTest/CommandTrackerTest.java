@@ -0,0 +1,62 @@
+package UnitTest;
+
+import org.junit.*;
+import static org.junit.Assert.* ;
+
+import Ziggurat.CommandTracker;
+
+/**
+ * CommandTrackerTest
+ * 
+ * This JUnit test checks if CommandTracker is working correctly.
+ */
+public class CommandTrackerTest
+{
+	// BEGIN Test cases --------------------------------------
+	
+	@Test
+	public void test_findUntried()
+    {
+        CommandTracker tracker = new CommandTracker();
+        int numCmds = 5;
+
+        //nothing tried yet
+        assertTrue(tracker.findUntried(0, 3, numCmds) == 3);
+        assertTrue(tracker.findUntried(-1, 2, numCmds) == 2);
+        assertTrue(tracker.numUntried(0, numCmds) == numCmds);
+
+        //the search wraps around
+        tracker.markTried(0, 3);
+        tracker.markTried(0, 4);
+        tracker.markTried(0, 4);
+        assertTrue(tracker.isTried(0, 4));
+        assertFalse(tracker.isTried(1, 4));
+        assertTrue(tracker.numUntried(0, numCmds) == 3);
+        assertTrue(tracker.findUntried(0, 3, numCmds) == 0);
+        assertTrue(tracker.findUntried(0, 1, numCmds) == 1);
+
+        //every command tried
+        tracker.markTried(0, 0);
+        tracker.markTried(0, 1);
+        assertTrue(tracker.findUntried(0, 3, numCmds) == 2);
+        tracker.markTried(0, 2);
+        assertTrue(tracker.numUntried(0, numCmds) == 0);
+        assertTrue(tracker.findUntried(0, 3, numCmds) == -1);
+
+        //other sensor states are unaffected
+        assertTrue(tracker.findUntried(1, 3, numCmds) == 3);
+	}
+
+	// END Test cases --------------------------------------
+
+    /**
+     * An easy way to run this test individually from the command line without
+     * the JUnit jar file
+     */
+    public static void main(String[] args)
+    {
+        CommandTrackerTest ctt = new CommandTrackerTest();
+        ctt.test_findUntried();
+    }
+	
+}//class CommandTrackerTest
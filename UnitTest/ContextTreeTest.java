@@ -0,0 +1,112 @@
+package UnitTest;
+
+import java.util.Random;
+
+import org.junit.*;
+import static org.junit.Assert.* ;
+
+import Ziggurat.ContextTree;
+
+/**
+ * ContextTreeTest
+ * 
+ * This JUnit test checks if ContextTree is working correctly by comparing
+ * it to the brute force search in Ziggurat.calcUniqueness.
+ */
+public class ContextTreeTest
+{
+    /**
+     * helper that calculates the uniqueness of taking cmd in sensor state
+     * nowSensor after the first n episodes in the given history via brute
+     * force.  Each episode's id is sensor * numCmds + cmd.
+     */
+    public static int bruteForce(int[] sensors, int[] cmds, int n,
+                                 int numCmds, int nowSensor, int cmd)
+    {
+        int uniqueLen = 0;
+        for(int start = n - 1; start >= 0; start--)
+        {
+            if ((cmds[start] != cmd) || (sensors[start] != nowSensor)) continue;
+            int matchLen = 1;
+            while(start - matchLen >= 0)
+            {
+                int comp = sensors[start - matchLen] * numCmds + cmds[start - matchLen];
+                int root = sensors[n - matchLen] * numCmds + cmds[n - matchLen];
+                if (comp != root) break;
+                matchLen++;
+            }
+            uniqueLen = Math.max(uniqueLen, matchLen);
+        }
+
+        return uniqueLen;
+    }
+    
+	// BEGIN Test cases --------------------------------------
+	
+	@Test
+	public void test_simple()
+    {
+        //0U,3A,7B,2B,3A,7B,2B,3?
+        int[] sensors = { 0, 3, 7, 2, 3, 7, 2 };
+        int[] cmds =    { 2, 0, 1, 1, 0, 1, 1 };  // A=0, B=1, U=2
+        ContextTree tree = new ContextTree(8);
+        for(int i = 0; i < sensors.length; i++)
+        {
+            tree.add(sensors[i] * 3 + cmds[i], sensors[i], cmds[i]);
+        }
+
+        int[] result = tree.calcUniqueness(3, 3);
+        assertTrue(result[0] == 4);
+        assertTrue(result[1] == 0);
+        assertTrue(result[2] == 0);
+
+        //unseen sensors are always unique
+        result = tree.calcUniqueness(-1, 3);
+        assertTrue(result[0] == 0);
+	}
+
+	@Test
+	public void test_random()
+    {
+        Random rand = new Random(42);
+        int numCmds = 3;
+        for(int numSensors = 1; numSensors <= 4; numSensors++)
+        {
+            for(int depth = 1; depth <= 6; depth += 5)
+            {
+                int[] sensors = new int[300];
+                int[] cmds = new int[300];
+                ContextTree tree = new ContextTree(depth);
+                for(int n = 0; n < sensors.length; n++)
+                {
+                    //check every command in the next sensor state
+                    sensors[n] = rand.nextInt(numSensors);
+                    int[] result = tree.calcUniqueness(sensors[n], numCmds);
+                    for(int cmd = 0; cmd < numCmds; cmd++)
+                    {
+                        int expected = bruteForce(sensors, cmds, n, numCmds, sensors[n], cmd);
+                        assertTrue(result[cmd] == Math.min(expected, depth));
+                    }
+
+                    cmds[n] = rand.nextInt(numCmds);
+                    tree.add(sensors[n] * numCmds + cmds[n], sensors[n], cmds[n]);
+                }
+                assertTrue(tree.size() == sensors.length);
+            }
+        }
+	}
+
+	// END Test cases --------------------------------------
+
+    /**
+     * An easy way to run this test individually from the command line without
+     * the JUnit jar file
+     */
+    public static void main(String[] args)
+    {
+        ContextTreeTest ctt = new ContextTreeTest();
+        ctt.test_simple();
+        ctt.test_random();
+    }
+	
+}//class ContextTreeTest
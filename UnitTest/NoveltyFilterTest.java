@@ -0,0 +1,80 @@
+package UnitTest;
+
+import java.util.Random;
+
+import org.junit.*;
+import static org.junit.Assert.* ;
+
+import Ziggurat.NoveltyFilter;
+
+/**
+ * NoveltyFilterTest
+ * 
+ * This JUnit test checks that NoveltyFilter never rules out something that
+ * it has seen by comparing its bounds to a brute force search.
+ */
+public class NoveltyFilterTest
+{
+	// BEGIN Test cases --------------------------------------
+	
+	@Test
+	public void test_simple()
+    {
+        NoveltyFilter filter = new NoveltyFilter();
+        assertFalse(filter.mightContain(0, 0));
+        assertTrue(filter.getUpperBound(0, 0) == 0);
+
+        filter.add(5, 1, 2);
+        assertTrue(filter.mightContain(1, 2));
+        assertFalse(filter.mightContain(2, 1));
+
+        //1B has only been seen with nothing before it
+        filter.add(7, 3, 0);
+        assertTrue(filter.getUpperBound(1, 2) == 1);
+	}
+
+	@Test
+	public void test_random()
+    {
+        Random rand = new Random(42);
+        int numCmds = 3;
+        int numSensors = 3;
+
+        //a tiny filter has lots of false positives but must stay sound
+        for(int numBits = 64; numBits <= 65536; numBits *= 32)
+        {
+            int[] sensors = new int[400];
+            int[] cmds = new int[400];
+            NoveltyFilter filter = new NoveltyFilter(numBits, 3, 4);
+            for(int n = 0; n < sensors.length; n++)
+            {
+                sensors[n] = rand.nextInt(numSensors);
+                for(int cmd = 0; cmd < numCmds; cmd++)
+                {
+                    int expected = ContextTreeTest.bruteForce(sensors, cmds, n,
+                                                              numCmds, sensors[n], cmd);
+                    assertTrue(filter.getUpperBound(sensors[n], cmd) >= expected);
+                    if (expected > 0) assertTrue(filter.mightContain(sensors[n], cmd));
+                }
+
+                cmds[n] = rand.nextInt(numCmds);
+                filter.add(sensors[n] * numCmds + cmds[n], sensors[n], cmds[n]);
+            }
+            assertTrue(filter.size() == sensors.length);
+        }
+	}
+
+	// END Test cases --------------------------------------
+
+    /**
+     * An easy way to run this test individually from the command line without
+     * the JUnit jar file
+     */
+    public static void main(String[] args)
+    {
+        NoveltyFilterTest nft = new NoveltyFilterTest();
+        nft.test_simple();
+        nft.test_random();
+    }
+	
+}//class NoveltyFilterTest
@@ -0,0 +1,91 @@
+package UnitTest;
+
+import java.util.Vector;
+import org.junit.*;
+import static org.junit.Assert.* ;
+
+import Ziggurat.PlanCache;
+import Ziggurat.Sequence;
+
+/**
+ * PlanCacheTest
+ * 
+ * This JUnit test checks if PlanCache is working correctly.
+ */
+public class PlanCacheTest
+{
+	// BEGIN Test cases --------------------------------------
+	
+	@Test
+	public void test_getPut()
+    {
+        PlanCache cache = new PlanCache(4);
+        Vector<Sequence> seqs = new Vector<Sequence>();
+
+        //Nothing is found in an empty cache
+        assertNull(cache.get(1, 7, 0));
+        assertTrue(cache.getMisses() == 1);
+
+        //Both routes and missing routes are remembered
+        cache.put(1, 7, 0, seqs);
+        cache.put(1, 8, 0, null);
+        assertTrue(cache.get(1, 7, 0).seqs == seqs);
+        assertNotNull(cache.get(1, 8, 0));
+        assertNull(cache.get(1, 8, 0).seqs);
+        assertTrue(cache.getHits() == 3);
+
+        //The same sequence id at another level is a different entry
+        assertNull(cache.get(2, 7, 0));
+        assertTrue(cache.getMisses() == 2);
+        assertTrue(cache.getHitRate() == 0.6);
+	}//test_getPut
+
+	@Test
+	public void test_generation()
+    {
+        PlanCache cache = new PlanCache(4);
+        cache.put(1, 7, 3, new Vector<Sequence>());
+
+        //A route from another generation is discarded
+        assertNull(cache.get(1, 7, 4));
+        assertTrue(cache.size() == 0);
+        assertNull(cache.get(1, 7, 3));
+	}//test_generation
+
+	@Test
+	public void test_lru()
+    {
+        PlanCache cache = new PlanCache(3);
+        for(int i = 0; i < 3; i++)
+        {
+            cache.put(0, i, 0, null);
+        }
+
+        //Use the oldest so the second oldest is dropped next
+        assertNotNull(cache.get(0, 0, 0));
+        cache.put(0, 3, 0, null);
+        assertTrue(cache.size() == 3);
+        assertNotNull(cache.get(0, 0, 0));
+        assertNull(cache.get(0, 1, 0));
+        assertNotNull(cache.get(0, 2, 0));
+        assertNotNull(cache.get(0, 3, 0));
+
+        cache.clear();
+        assertTrue(cache.size() == 0);
+	}//test_lru
+
+	// END Test cases --------------------------------------
+
+    /**
+     * An easy way to run this test individually from the command line without
+     * the JUnit jar file
+     */
+    public static void main(String[] args)
+    {
+        PlanCacheTest pct = new PlanCacheTest();
+        pct.test_getPut();
+        pct.test_generation();
+        pct.test_lru();
+    }
+	
+}//class PlanCacheTest
@@ -77,6 +77,53 @@ public class PlanTest
         matchPlan(p, actions);
 	}
 
+	@Test
+	public void test_rejoin()
+    {
+        //Plan to take { aEE1, aEE2, aEE3, aEE1 } but shorten it to
+        //{ aEE3, aEE3, aEE1 } with a replacement
+        Plan p = new Plan(new Route(SequenceTest.sEE1.clone()));
+        p.applyReplacement(ReplacementTest.repl1);
+        p.advance(0);
+
+        //The agent expected to see ep1 but sees ep4 instead.  It takes one
+        //step to get back to the last step of the plan.
+        ElementalEpisode nowEp = ElementalEpisodeTest.ep4.clone();
+        assertFalse(p.nextStepIsValid(nowEp));
+        Action bridgeAct = new Action(ElementalEpisodeTest.ep4.clone(),
+                                      ElementalEpisodeTest.ep1.clone());
+        Vector<Action> bridge = new Vector<Action>();
+        bridge.add(bridgeAct);
+        assertTrue(p.rejoin(0, 2, bridge));
+
+        //The plan starts from where the agent is now, keeps its replacement and
+        //then finishes as originally planned
+        assertTrue(p.nextStepIsValid(nowEp));
+        assertTrue(p.getRoute(0).getRepls().contains(ReplacementTest.repl1));
+        Action[] actions = { bridgeAct, ActionTest.aEE1 };
+        matchPlan(p, actions);
+
+        //The plan can't be rejoined at an earlier step
+        p = new Plan(new Route(SequenceTest.sEE1.clone()));
+        p.advance(0);
+        assertFalse(p.rejoin(0, 0, bridge));
+	}
+
+	@Test
+	public void test_rejoinLevel1()
+    {
+        //Skip ahead to the fifth step of the level 1 route
+        Plan p = new Plan(RouteTest.constructRoute3());
+        Action target = p.getRoute(1).getActionAtIndex(4);
+        assertTrue(p.rejoin(1, 4, new Vector<Action>()));
+
+        //The level 0 route is rebuilt from that step
+        assertTrue(p.getRoute(1).getCurrAction() == target);
+        Sequence seq = ((SequenceEpisode)target.getLHS()).getSequence();
+        assertTrue(p.getRoute(0).getActions().equals(seq.getActions()));
+        assertTrue(p.getRoute(0).getCurrActIndex() == 0);
+	}
+
 
 	// // BEGIN Test cases --------------------------------------
 
@@ -90,6 +137,8 @@ public class PlanTest
         pt.test_advance1();
         pt.test_advance2();
         pt.test_advance3();
+        pt.test_rejoin();
+        pt.test_rejoinLevel1();
     }
 	
 }//class PlanTest
@@ -162,6 +162,31 @@ public class RouteTest
         assertTrue(r.numElementalEpisodes() == (route3Actions.length*4 + 4) );
     }
 
+    @Test 
+    public void test_routeNode()
+    {
+        //build the equivalent of route3 as a chain of nodes
+        RouteNode seed = new RouteNode(new Route(SequenceWithSequenceEpisodesTest.sSE3));
+        RouteNode n1 = seed.extend(SequenceWithSequenceEpisodesTest.sSE2);
+        RouteNode n2 = n1.extend(SequenceWithSequenceEpisodesTest.sSE1);
+        assertTrue(n2.numElementalEpisodes() == route3.numElementalEpisodes());
+
+        //extending a node must not change it
+        assertTrue(n1.contains(SequenceWithSequenceEpisodesTest.sSE2));
+        assertFalse(n1.contains(SequenceWithSequenceEpisodesTest.sSE1));
+        assertTrue(n2.contains(SequenceWithSequenceEpisodesTest.sSE1));
+        assertTrue(n2.contains(SequenceWithSequenceEpisodesTest.sSE3));
+
+        //the materialized route should iterate the same actions
+        Route r = n2.toRoute();
+        assertTrue(r.numElementalEpisodes() == n2.numElementalEpisodes());
+        for(Action expectedAction : route3Actions)
+        {
+            assertTrue(r.getCurrAction().equals(expectedAction));
+            r.advance();
+        }
+    }
+
 	// BEGIN Test cases --------------------------------------
 
     /**
@@ -178,6 +203,7 @@ public class RouteTest
         rt.test_episodeCount1();
         rt.test_episodeCount2();
         rt.test_episodeCount3();
+        rt.test_routeNode();
     }
 	
 }//class RouteTest
@@ -68,4 +68,18 @@ public class SequenceTest {
 		sEE1.add(ActionTest.aEE2);
 		assertTrue(sEE1.numElementalEpisodes() == 5);
 	}
+	
+	@Test
+	public void test_makeImmutable()
+	{
+		Sequence s = new Sequence(ActionTest.makeActionVectorElementalEpisodes1());
+		s.makeImmutable();
+		assertTrue(s.isImmutable());
+		assertTrue(s.numElementalEpisodes() == 4);
+		assertTrue(s.getRewardPos() == -1);
+		assertFalse(s.containsReward());
+
+		//copies may be modified so they are not immutable
+		assertFalse(s.clone().isImmutable());
+	}
 }//class SequenceTest
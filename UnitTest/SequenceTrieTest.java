@@ -0,0 +1,102 @@
+package UnitTest;
+
+import java.util.Vector;
+
+import org.junit.*;
+import static org.junit.Assert.* ;
+
+import Ziggurat.Action;
+import Ziggurat.Sequence;
+import Ziggurat.SequenceTrie;
+
+/**
+ * SequenceTrieTest
+ * 
+ * This JUnit test checks if SequenceTrie is working correctly.  Note that the
+ * trie is keyed on action ids so the same Action objects must be reused (as
+ * Ziggurat.update does).
+ */
+public class SequenceTrieTest
+{
+    /** helper to walk the cursor over a sequence and complete it */
+    public static Sequence index(SequenceTrie trie, Sequence seq)
+    {
+        for(Action act : seq.getActions())
+        {
+            trie.advance(act);
+        }
+
+        return trie.complete(seq);
+    }
+
+    /** helper to build a sequence from the given actions */
+    public static Sequence makeSeq(Action... acts)
+    {
+        Sequence seq = new Sequence();
+        for(Action act : acts)
+        {
+            seq.add(act);
+        }
+
+        return seq;
+    }
+    
+	// BEGIN Test cases --------------------------------------
+	
+	@Test
+	public void test_complete()
+    {
+        SequenceTrie trie = new SequenceTrie();
+        Sequence s1 = makeSeq(ActionTest.aEE1, ActionTest.aEE2);
+        Sequence s2 = makeSeq(ActionTest.aEE1, ActionTest.aEE2);
+        Sequence s3 = makeSeq(ActionTest.aEE1);
+
+        //the first copy is canonical
+        assertTrue(index(trie, s1) == s1);
+        assertTrue(index(trie, s2) == s1);
+
+        //a prefix of an existing sequence is still a new sequence
+        assertTrue(index(trie, s3) == s3);
+        assertTrue(trie.size() == 2);
+	}
+
+	@Test
+	public void test_getSequencesWithPrefix()
+    {
+        SequenceTrie trie = new SequenceTrie();
+        Sequence s1 = makeSeq(ActionTest.aEE1, ActionTest.aEE2);
+        Sequence s2 = makeSeq(ActionTest.aEE1, ActionTest.aEE3, ActionTest.aEE2);
+        Sequence s3 = makeSeq(ActionTest.aEE2, ActionTest.aEE1);
+        index(trie, s1);
+        index(trie, s2);
+        index(trie, s3);
+
+        Vector<Action> prefix = new Vector<Action>();
+        prefix.add(ActionTest.aEE1);
+        Vector<Sequence> found = trie.getSequencesWithPrefix(prefix);
+        assertTrue(found.size() == 2);
+        assertTrue(found.contains(s1));
+        assertTrue(found.contains(s2));
+
+        //the empty prefix matches everything
+        assertTrue(trie.getSequencesWithPrefix(new Vector<Action>()).size() == 3);
+
+        //no match
+        prefix.add(ActionTest.aEE1);
+        assertTrue(trie.getSequencesWithPrefix(prefix).size() == 0);
+	}
+
+	// END Test cases --------------------------------------
+
+    /**
+     * An easy way to run this test individually from the command line without
+     * the JUnit jar file
+     */
+    public static void main(String[] args)
+    {
+        SequenceTrieTest stt = new SequenceTrieTest();
+        stt.test_complete();
+        stt.test_getSequencesWithPrefix();
+    }
+	
+}//class SequenceTrieTest
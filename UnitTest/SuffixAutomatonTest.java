@@ -0,0 +1,145 @@
+package UnitTest;
+
+import java.util.Random;
+
+import org.junit.*;
+import static org.junit.Assert.* ;
+
+import Ziggurat.SuffixAutomaton;
+
+/**
+ * SuffixAutomatonTest
+ * 
+ * This JUnit test checks if SuffixAutomaton is working correctly by comparing
+ * it to a brute force search.
+ */
+public class SuffixAutomatonTest
+{
+    /**
+     * helper that finds the longest suffix of text[0..n-1] that also ends
+     * earlier via brute force.  Returns {length, earliest end position}.
+     */
+    public static int[] bruteForce(int[] text, int n)
+    {
+        int bestLen = 0;
+        int bestEnd = -1;
+        for(int i = 0; i < n - 1; i++)
+        {
+            int matchLen = 0;
+            while((i - matchLen >= 0) && (text[i - matchLen] == text[n - 1 - matchLen]))
+            {
+                matchLen++;
+            }
+            if (matchLen > bestLen)
+            {
+                bestLen = matchLen;
+                bestEnd = i;
+            }
+        }
+
+        int[] result = { bestLen, bestEnd };
+        return result;
+    }
+    
+	// BEGIN Test cases --------------------------------------
+	
+	@Test
+	public void test_simple()
+    {
+        //Z,A,B,R,A,C,A,D,A,B,R,A  (the example from findOrientation)
+        int[] text = { 25, 0, 1, 17, 0, 2, 0, 3, 0, 1, 17, 0 };
+        SuffixAutomaton sam = new SuffixAutomaton();
+        assertTrue(sam.getRepeatedSuffixLength() == 0);
+        for(int sym : text)
+        {
+            sam.extend(sym);
+        }
+
+        assertTrue(sam.length() == text.length);
+        assertTrue(sam.getRepeatedSuffixLength() == 4);
+        assertTrue(sam.getRepeatedSuffixEnd() == 4);
+	}
+
+	@Test
+	public void test_random()
+    {
+        Random rand = new Random(42);
+        for(int alphabet = 1; alphabet <= 5; alphabet++)
+        {
+            int[] text = new int[300];
+            SuffixAutomaton sam = new SuffixAutomaton();
+            for(int n = 1; n <= text.length; n++)
+            {
+                text[n-1] = rand.nextInt(alphabet);
+                sam.extend(text[n-1]);
+
+                int[] expected = bruteForce(text, n);
+                assertTrue(sam.getRepeatedSuffixLength() == expected[0]);
+                assertTrue(sam.getRepeatedSuffixEnd() == expected[1]);
+            }
+
+            //the automaton never needs more than 2n states
+            assertTrue(sam.numStates() <= 2 * text.length);
+        }
+	}
+
+	@Test
+	public void test_findEarlierSuffix()
+    {
+        Random rand = new Random(7);
+        int[] text = new int[201];
+        SuffixAutomaton sam = new SuffixAutomaton();
+        for(int n = 1; n < text.length; n++)
+        {
+            text[n-1] = rand.nextInt(3);
+            sam.extend(text[n-1]);
+
+            //try every limit with and without an extra symbol
+            for(int extra = -1; extra < 3; extra++)
+            {
+                int len = n;
+                if (extra >= 0) text[len++] = extra;
+                for(int limit = 0; limit < n; limit++)
+                {
+                    //brute force: longest match ending at or before limit
+                    int bestLen = 0;
+                    int bestEnd = -1;
+                    for(int i = 0; i <= Math.min(limit, len - 2); i++)
+                    {
+                        int matchLen = 0;
+                        while((i - matchLen >= 0) && (text[i - matchLen] == text[len - 1 - matchLen]))
+                        {
+                            matchLen++;
+                        }
+                        if (matchLen > bestLen)
+                        {
+                            bestLen = matchLen;
+                            bestEnd = i;
+                        }
+                    }
+
+                    SuffixAutomaton.Match match = (extra >= 0)
+                        ? sam.findEarlierSuffix(extra, limit)
+                        : sam.findEarlierSuffix(limit);
+                    assertTrue(match.length == bestLen);
+                    assertTrue(match.end == bestEnd);
+                }
+            }
+        }
+	}
+
+	// END Test cases --------------------------------------
+
+    /**
+     * An easy way to run this test individually from the command line without
+     * the JUnit jar file
+     */
+    public static void main(String[] args)
+    {
+        SuffixAutomatonTest sat = new SuffixAutomatonTest();
+        sat.test_simple();
+        sat.test_random();
+        sat.test_findEarlierSuffix();
+    }
+	
+}//class SuffixAutomatonTest
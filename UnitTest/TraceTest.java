@@ -0,0 +1,142 @@
+package UnitTest;
+
+import java.io.*;
+
+import org.junit.*;
+import static org.junit.Assert.* ;
+
+import Ziggurat.*;
+
+/**
+ * TraceTest
+ * 
+ * This JUnit test checks if TraceWriter and TraceReader are working correctly
+ */
+public class TraceTest
+{
+    /** helper to make a sensor set from attribute/value pairs */
+    public static WMESet makeSensors(String... data)
+    {
+        return new WMESet(WMESet.makeSensors(data));
+    }
+    
+	// BEGIN Test cases --------------------------------------
+	
+	@Test
+	public void test_roundTrip() throws IOException
+    {
+        WMESet[] sensors = {
+            makeSensors("left", "0", "right", "1", WME.REWARD_STRING, "0.0"),
+            makeSensors("left", "1", "right", "1", WME.REWARD_STRING, "0.0"),
+            makeSensors("left", "0", "right", "1", WME.REWARD_STRING, "0.0"),
+            makeSensors("name", "fred", "c", "x", WME.REWARD_STRING, "1.0")
+        };
+        int[] cmds = { 2, 0, 300, 1 };
+
+        //Write the trace to memory
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TraceWriter writer = new TraceWriter(bytes);
+        for(int i = 0; i < sensors.length; i++)
+        {
+            writer.write(sensors[i], cmds[i]);
+        }
+        writer.close();
+        assertTrue(writer.getNumSteps() == sensors.length);
+
+        //Read it back in two chunks
+        TraceReader reader = new TraceReader(new ByteArrayInputStream(bytes.toByteArray()));
+        WMESet[] readSensors = new WMESet[3];
+        int[] readCmds = new int[3];
+        assertTrue(reader.read(readSensors, readCmds) == 3);
+        for(int i = 0; i < 3; i++)
+        {
+            assertTrue(readSensors[i].equals(sensors[i]));
+            assertTrue(readCmds[i] == cmds[i]);
+        }
+        assertTrue(reader.read(readSensors, readCmds) == 1);
+        assertTrue(readSensors[0].equals(sensors[3]));
+        assertTrue(readSensors[0].getAttr("name").getStr().equals("fred"));
+        assertTrue(readCmds[0] == 1);
+
+        //The end of the trace
+        assertTrue(reader.read(readSensors, readCmds) == 0);
+        assertTrue(reader.getNumSteps() == sensors.length);
+	}
+
+	@Test
+	public void test_badHeader()
+    {
+        byte[] garbage = { 1, 2, 3, 4, 5, 6 };
+        try
+        {
+            new TraceReader(new ByteArrayInputStream(garbage));
+            fail("accepted a file that isn't a trace");
+        }
+        catch(IOException ioe)
+        {
+            //expected
+        }
+	}
+
+	@Test
+	public void test_noCommand() throws IOException
+    {
+        //A step with no command can't be recorded
+        TraceWriter writer = new TraceWriter(new ByteArrayOutputStream());
+        try
+        {
+            writer.write(makeSensors("left", "0", WME.REWARD_STRING, "0.0"), -1);
+            fail("recorded a step with no command");
+        }
+        catch(IllegalArgumentException iae)
+        {
+            //expected
+        }
+        assertTrue(writer.getNumSteps() == 0);
+
+        //Build a trace that has one anyway (a command of -1 is written as 0)
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(TraceWriter.MAGIC);
+        out.writeByte(TraceWriter.VERSION);
+        out.writeByte(TraceWriter.TAG_WME);
+        out.writeUTF("left");
+        out.writeByte(WME.Type.INT.ordinal());
+        out.writeUTF("0");
+        for(int cmd = 1; cmd >= 0; cmd--)
+        {
+            out.writeByte(TraceWriter.TAG_STEP);
+            out.writeByte(1);
+            out.writeByte(0);
+            out.writeByte(cmd);
+        }
+        out.close();
+
+        //Replaying it must fail rather than skip the steps
+        Ziggurat zigg = new Ziggurat(new NullEnvironment());
+        try
+        {
+            zigg.replay(new TraceReader(new ByteArrayInputStream(bytes.toByteArray())));
+            fail("replayed a step with no command");
+        }
+        catch(IOException ioe)
+        {
+            //expected
+        }
+	}
+
+	// END Test cases --------------------------------------
+
+    /**
+     * An easy way to run this test individually from the command line without
+     * the JUnit jar file
+     */
+    public static void main(String[] args) throws IOException
+    {
+        TraceTest tt = new TraceTest();
+        tt.test_roundTrip();
+        tt.test_badHeader();
+        tt.test_noCommand();
+    }
+	
+}//class TraceTest
@@ -152,6 +152,7 @@ public class ZiggBasicTest
         assertTrue(epmems.elementAt(1).size() == 1);
         SequenceEpisode seqEp = (SequenceEpisode)epmems.elementAt(1).elementAt(0);
         assertTrue(seqEp.getSequence() == seq1);
+        assertTrue(seq1.getContainingEpisode() == seqEp);
         
 	}//test_OneSequence
 
@@ -2,6 +2,7 @@ package UnitTest;
 
 import java.util.Vector;
 import java.util.Random;
+import java.util.function.Consumer;
 
 import org.junit.*;
 import static org.junit.Assert.* ;
@@ -290,6 +291,201 @@ public class ZiggSimpleRoombaTest
         
     }//class SimplifiedRoombaEnvironment
 
+    /**
+     * This subclass exposes the approximate orientation search so that its
+     * matches can be checked
+     */
+    public static class ApproxZiggurat extends Ziggurat
+    {
+        public ApproxZiggurat(Environment env) { super(env); }
+
+        /** @return the number of episodes indexed at a given level */
+        public int indexLength(int level) { return this.epIndexes.elementAt(level).length(); }
+
+        /** @return the approximate match at a given level that beats no exact
+         *          match at all */
+        public ApproximateMatcher.Match approxMatch(int level)
+        {
+            return findApproximateMatch(level, 0);
+        }
+    }//class ApproxZiggurat
+
+    /**
+     * This subclass checks every plan that it repairs
+     */
+    public static class RepairZiggurat extends Ziggurat
+    {
+        public RepairZiggurat(Environment env) { super(env); }
+
+        protected boolean repairPlan(ElementalEpisode nowEp)
+        {
+            if (! super.repairPlan(nowEp)) return false;
+
+            //The level 0 route starts from the current sensors and each step
+            //leads to the next
+            assertTrue(this.currPlan.nextStepIsValid(nowEp));
+            Route route = this.currPlan.getRoute(0);
+            for(int i = route.getCurrActIndex(); i < route.length() - 1; i++)
+            {
+                ElementalEpisode rhs = (ElementalEpisode)route.getActionAtIndex(i).getRHS();
+                ElementalEpisode lhs = (ElementalEpisode)route.getActionAtIndex(i + 1).getLHS();
+                assertTrue(rhs.equalSensors(lhs));
+            }
+
+            //The plan still leads to a reward
+            Route top = this.currPlan.getRoute(this.currPlan.getNumLevels() - 1);
+            assertTrue(top.getLastSeq().containsReward());
+
+            //Its replacements are active so they share in its success
+            for(Replacement repl : this.currPlan.getRepls())
+            {
+                assertTrue(this.activeDecEls.contains(repl));
+            }
+
+            return true;
+        }//repairPlan
+    }//class RepairZiggurat
+
+    /**
+     * This interface is used by {@link #assertSameSteps} to check a pair of
+     * Ziggs after each step.
+     */
+    public interface StepCheck
+    {
+        public void check(Ziggurat zigg, Ziggurat other);
+    }//interface StepCheck
+
+    /**
+     * makeZigg
+     *
+     * creates a quiet Zigg with a given random seed
+     *
+     * @param configure  sets up the Zigg (or null for the defaults)
+     */
+    public Ziggurat makeZigg(Environment env, int seed, Consumer<Ziggurat> configure)
+    {
+        Ziggurat zigg = new Ziggurat(env);
+        zigg.setRandSeed(seed);
+        zigg.setMonitor(new MonitorNull(env));
+        if (configure != null) configure.accept(zigg);
+        return zigg;
+    }//makeZigg
+
+    /**
+     * runZigg
+     *
+     * creates a quiet Zigg with a given random seed and runs it for a given
+     * number of steps
+     *
+     * @param configure  sets up the Zigg (or null for the defaults)
+     */
+    public Ziggurat runZigg(int seed, int numSteps, Consumer<Ziggurat> configure)
+    {
+        Environment env = new SimplifiedRoombaEnvironment();
+        Ziggurat zigg = makeZigg(env, seed, configure);
+
+        WMESet sensors = env.generateCurrentWMESet();
+        for(int i = 0; i < numSteps; i++)
+        {
+            sensors = env.takeStep(zigg.tick(sensors));
+        }
+
+        return zigg;
+    }//runZigg
+
+    /**
+     * assertSameSteps
+     *
+     * runs two Ziggs with the same random seed side by side, each in its own
+     * environment, and verifies that they select the same command at every
+     * step and so record the same level 0 episodes.
+     *
+     * @param configure       sets up the first Zigg (or null for the defaults)
+     * @param configureOther  sets up the second Zigg
+     * @param check           is called after every step (may be null)
+     *
+     * @return the two Ziggs
+     */
+    public Ziggurat[] assertSameSteps(int seed, int numSteps,
+                                      Consumer<Ziggurat> configure,
+                                      Consumer<Ziggurat> configureOther,
+                                      StepCheck check)
+    {
+        Environment env = new SimplifiedRoombaEnvironment();
+        Ziggurat zigg = makeZigg(env, seed, configure);
+        Environment otherEnv = new SimplifiedRoombaEnvironment();
+        Ziggurat other = makeZigg(otherEnv, seed, configureOther);
+
+        WMESet sensors = env.generateCurrentWMESet();
+        WMESet otherSensors = otherEnv.generateCurrentWMESet();
+        for(int i = 0; i < numSteps; i++)
+        {
+            int cmd = zigg.tick(sensors);
+            assertTrue(other.tick(otherSensors) == cmd);
+            sensors = env.takeStep(cmd);
+            otherSensors = otherEnv.takeStep(cmd);
+            if (check != null) check.check(zigg, other);
+        }
+
+        assertTrue(zigg.getEpmems().elementAt(0).equals(other.getEpmems().elementAt(0)));
+        return new Ziggurat[] { zigg, other };
+    }//assertSameSteps
+
+    /**
+     * distancesToReward
+     *
+     * calculates from scratch, with Dijkstra's algorithm, the distances that
+     * an action graph's reward field should have
+     */
+    public static int[] distancesToReward(ActionGraph graph)
+    {
+        //Sequences with a reward are where routes end
+        int n = graph.numNodes();
+        int[] dist = new int[n];
+        boolean[] done = new boolean[n];
+        for(int node = 0; node < n; node++)
+        {
+            dist[node] = RewardField.UNREACHABLE;
+            Sequence seq = graph.getSequence(node);
+            if (! seq.containsReward()) continue;
+
+            //The RHS of the last action is counted too (except at level 0)
+            dist[node] = 0;
+            if ((graph.getLevel() > 0) && (seq.length() > 0))
+            {
+                Episode rhs = seq.lastAction().getRHS();
+                dist[node] = (rhs instanceof SequenceEpisode)
+                    ? ((SequenceEpisode)rhs).numElementalEpisodes() : 1;
+            }
+        }
+
+        //Repeatedly finish the nearest node and follow the edges into it
+        while(true)
+        {
+            int best = -1;
+            for(int node = 0; node < n; node++)
+            {
+                if (done[node] || (dist[node] == RewardField.UNREACHABLE)) continue;
+                if ((best == -1) || (dist[node] < dist[best])) best = node;
+            }
+            if (best == -1) break;
+            done[best] = true;
+
+            for(int from = 0; from < n; from++)
+            {
+                if (graph.getSequence(from).containsReward()) continue;
+                for(int edge = 0; edge < graph.numEdges(from); edge++)
+                {
+                    if (graph.getTarget(from, edge) != best) continue;
+                    dist[from] = Math.min(dist[from],
+                                          graph.getWeight(from, edge) + dist[best]);
+                }
+            }
+        }//while
+
+        return dist;
+    }//distancesToReward
+
     
 	// BEGIN Test cases --------------------------------------
 
@@ -324,6 +520,346 @@ public class ZiggSimpleRoombaTest
         
 	}//test_Zigg
 
+	@Test
+	public void test_levelLimits()
+    {
+        //Run a shallow Zigg and a capped Zigg for a while
+        Ziggurat zigg = runZigg(8, 200, new Consumer<Ziggurat>() {
+                public void accept(Ziggurat zigg) { zigg.setMaxLevelDepth(2); }
+            });
+        Ziggurat capped = runZigg(8, 200, new Consumer<Ziggurat>() {
+                public void accept(Ziggurat zigg) { zigg.setLevelCaps(5, 5, 5); }
+            });
+
+        //Verify the shallow Zigg never grew a third level
+        assertTrue(zigg.getEpmems().size() == 2);
+
+        //Verify that no capped level exceeded its caps
+        Vector<Vector<Episode>> eps = capped.getEpmems();
+        assertTrue(eps.size() > Ziggurat.FIRST_CAPPED_LEVEL);
+        for(int level = Ziggurat.FIRST_CAPPED_LEVEL; level < eps.size(); level++)
+        {
+            assertTrue(eps.elementAt(level).size() <= 5);
+            assertTrue(capped.getActions().elementAt(level).size() <= 5);
+            assertTrue(capped.getSequenceTrie(level).size() <= 5);
+        }
+	}//test_levelLimits
+
+	@Test
+	public void test_asyncUpdates()
+    {
+        //Create two identical Ziggs but update one in the background
+        Ziggurat[] ziggs = assertSameSteps(8, 200, null, new Consumer<Ziggurat>() {
+                public void accept(Ziggurat zigg) { zigg.setAsyncUpdates(true); }
+            }, null);
+        Ziggurat zigg = ziggs[0];
+        Ziggurat async = ziggs[1];
+
+        //Verify that both built the same hierarchy
+        Vector<Vector<Episode>> eps = zigg.getEpmems();
+        Vector<Vector<Episode>> asyncEps = async.getEpmems();
+        assertTrue(eps.size() == asyncEps.size());
+        for(int level = 0; level < eps.size(); level++)
+        {
+            assertTrue(eps.elementAt(level).equals(asyncEps.elementAt(level)));
+            assertTrue(zigg.getActions().elementAt(level).size()
+                       == async.getActions().elementAt(level).size());
+        }
+
+        async.setAsyncUpdates(false);
+	}//test_asyncUpdates
+
+	@Test
+	public void test_tickBatch()
+    {
+        //Run a Zigg normally and record what it sees and does
+        Environment env = new SimplifiedRoombaEnvironment();
+        Ziggurat zigg = makeZigg(env, 8, null);
+        WMESet[] sensorLog = new WMESet[200];
+        int[] cmdLog = new int[200];
+        WMESet sensors = env.generateCurrentWMESet();
+        for(int i = 0; i < 200; i++)
+        {
+            sensorLog[i] = sensors;
+            cmdLog[i] = zigg.tick(sensors);
+            sensors = env.takeStep(cmdLog[i]);
+        }
+
+        //Give the same steps to another Zigg all at once
+        Ziggurat batch = new Ziggurat(env);
+        batch.setAsyncUpdates(true);
+        final int[] numLines = { 0 };
+        Monitor batchMon = new Monitor(env) {
+                public void print(String s) { }
+                public void println(String s) { numLines[0]++; }
+            };
+        batch.setMonitor(batchMon);
+        assertTrue(batch.tickBatch(sensorLog, cmdLog) == cmdLog[199]);
+        batch.syncHierarchy();
+
+        //Only the summary (and entering and exiting tickBatch) is logged,
+        //even by the background updates, and the monitor is left as it was
+        assertTrue(numLines[0] == 3);
+        assertTrue(Ziggurat.getMonitor() == batchMon);
+        assertFalse(batchMon.isQuiet());
+
+        //Verify that both built the same hierarchy
+        Vector<Vector<Episode>> eps = zigg.getEpmems();
+        Vector<Vector<Episode>> batchEps = batch.getEpmems();
+        assertTrue(eps.elementAt(0).size() == 200);
+        assertTrue(eps.elementAt(0).equals(batchEps.elementAt(0)));
+        assertTrue(eps.size() == batchEps.size());
+        for(int level = 0; level < eps.size(); level++)
+        {
+            assertTrue(eps.elementAt(level).equals(batchEps.elementAt(level)));
+            assertTrue(zigg.getActions().elementAt(level).equals(
+                           batch.getActions().elementAt(level)));
+            assertTrue(zigg.getSequences().elementAt(level).equals(
+                           batch.getSequences().elementAt(level)));
+        }
+
+        batch.setAsyncUpdates(false);
+	}//test_tickBatch
+
+	@Test
+	public void test_parallelUniqueness()
+    {
+        //Create two identical Ziggs but make one scan the episodes for
+        //uniqueness in parallel instead of using the context tree
+        assertSameSteps(8, 500, null, new Consumer<Ziggurat>() {
+                public void accept(Ziggurat zigg)
+                {
+                    zigg.setContextTreeDepth(0);
+                    zigg.setParallelUniqueness(true);
+                }
+            }, null);
+	}//test_parallelUniqueness
+
+	@Test
+	public void test_parallelOrientation()
+    {
+        //Create two identical Ziggs but make one orient itself in parallel.
+        //Both should make the same plans and so take the same steps.
+        Ziggurat[] ziggs = assertSameSteps(8, 500, null, new Consumer<Ziggurat>() {
+                public void accept(Ziggurat zigg) { zigg.setParallelOrientation(true); }
+            }, null);
+
+        //The parallel Zigg should never wait on more of the level 0 search
+        //than the other one does
+        assertTrue(ziggs[0].getNumElementalSearches() > 0);
+        assertTrue(ziggs[1].getNumElementalSearches() <= ziggs[0].getNumElementalSearches());
+	}//test_parallelOrientation
+
+	@Test
+	public void test_rewardField()
+    {
+        //Create two identical Ziggs but make one search for its routes
+        //instead of following the reward field.  Both should find routes of
+        //the same length and so take the same steps.
+        Ziggurat zigg = assertSameSteps(5, 500, null, new Consumer<Ziggurat>() {
+                public void accept(Ziggurat zigg)
+                {
+                    zigg.setPlanner(Ziggurat.Planner.UNIFORM_COST);
+                }
+            }, null)[0];
+
+        //Each field should have the distances a fresh search finds
+        int numReachable = 0;
+        for(int level = 0; level < zigg.getEpmems().size(); level++)
+        {
+            ActionGraph graph = zigg.getActionGraph(level);
+            RewardField field = graph.getRewardField();
+            field.settle();
+            int[] dist = distancesToReward(graph);
+            for(int node = 0; node < graph.numNodes(); node++)
+            {
+                assertTrue(field.getDistance(node) == dist[node]);
+                if (dist[node] != RewardField.UNREACHABLE) numReachable++;
+            }
+        }
+        assertTrue(numReachable > 0);
+	}//test_rewardField
+
+	@Test
+	public void test_aStar()
+    {
+        //A* should take the same steps as uniform cost search without
+        //examining more candidate routes
+        Ziggurat[] ziggs = assertSameSteps(3, 500, new Consumer<Ziggurat>() {
+                public void accept(Ziggurat zigg)
+                {
+                    zigg.setPlanner(Ziggurat.Planner.A_STAR);
+                }
+            }, new Consumer<Ziggurat>() {
+                public void accept(Ziggurat zigg)
+                {
+                    zigg.setPlanner(Ziggurat.Planner.UNIFORM_COST);
+                }
+            }, new StepCheck() {
+                public void check(Ziggurat zigg, Ziggurat search)
+                {
+                    assertTrue(zigg.getLastPlanExpansions() <= search.getLastPlanExpansions());
+                }
+            });
+        assertTrue(ziggs[0].getTotalPlanExpansions() > 0);
+        assertTrue(ziggs[0].getTotalPlanExpansions() < ziggs[1].getTotalPlanExpansions());
+	}//test_aStar
+
+	@Test
+	public void test_bidirectional()
+    {
+        Ziggurat zigg = runZigg(2, 500, null);
+
+        //From every sequence both searches should find routes of the same
+        //length
+        int numRoutes = 0;
+        for(Sequence seq : zigg.getSequences().elementAt(0))
+        {
+            if (seq.length() == 0) continue;
+            zigg.setPlanner(Ziggurat.Planner.UNIFORM_COST);
+            Route expected = zigg.findRoute(new Route(seq));
+            zigg.setPlanner(Ziggurat.Planner.BIDIRECTIONAL);
+            Route route = zigg.findRoute(new Route(seq));
+
+            assertTrue((expected == null) == (route == null));
+            if (route == null) continue;
+            assertTrue(route.numElementalEpisodes() == expected.numElementalEpisodes());
+            assertTrue(route.getLastSeq().containsReward());
+            numRoutes++;
+        }
+        assertTrue(numRoutes > 0);
+	}//test_bidirectional
+
+	@Test
+	public void test_planBudget()
+    {
+        Ziggurat zigg = runZigg(2, 500, null);
+
+        //Every call must search
+        zigg.setPlanCacheSize(0);
+        zigg.setPlanner(Ziggurat.Planner.UNIFORM_COST);
+        int numCutShort = 0;
+        for(Sequence seq : zigg.getSequences().elementAt(0))
+        {
+            if (seq.length() == 0) continue;
+
+            //An unlimited search is never cut short
+            zigg.setPlanBudget(0, 0);
+            Route full = zigg.findRoute(new Route(seq));
+            assertFalse(zigg.wasPlanBudgetExhausted());
+            int needed = zigg.getLastPlanExpansions();
+
+            //With only one candidate the search can only extend the seed
+            zigg.setPlanBudget(0, 1);
+            Route route = zigg.findRoute(new Route(seq));
+            assertTrue(zigg.getLastPlanExpansions() <= 1);
+            assertTrue(zigg.wasPlanBudgetExhausted() == (needed > 1));
+            if (zigg.wasPlanBudgetExhausted())
+            {
+                numCutShort++;
+                if (route != null) assertTrue(route.getLastSeq() != seq);
+            }
+            else if (full != null)
+            {
+                assertTrue(route.numElementalEpisodes() == full.numElementalEpisodes());
+            }
+
+            //With no time at all only the seed can be examined
+            zigg.setPlanBudget(1, 0);
+            zigg.findRoute(new Route(seq));
+            assertTrue(zigg.getLastPlanExpansions() <= 1);
+        }
+        assertTrue(numCutShort > 0);
+	}//test_planBudget
+
+	@Test
+	public void test_repairBudget()
+    {
+        //Create two identical Ziggs but make one put off repairing its
+        //reward fields until it replans.  Both should take the same steps.
+        final long[] maxRepairs = { 0 };
+        Ziggurat[] ziggs = assertSameSteps(4, 500, new Consumer<Ziggurat>() {
+                public void accept(Ziggurat zigg) { zigg.setRepairBudget(0); }
+            }, new Consumer<Ziggurat>() {
+                public void accept(Ziggurat zigg) { zigg.setRepairBudget(1); }
+            }, new StepCheck() {
+                public void check(Ziggurat zigg, Ziggurat lazy)
+                {
+                    //Only the lazy Zigg has anything left to repair when it
+                    //replans
+                    assertTrue(zigg.getLastPlanRepairs() == 0);
+                    maxRepairs[0] = Math.max(maxRepairs[0], lazy.getLastPlanRepairs());
+                }
+            });
+        assertTrue(maxRepairs[0] > 0);
+
+        //Once settled, the lazy fields should match the others
+        Ziggurat zigg = ziggs[0];
+        Ziggurat lazy = ziggs[1];
+        for(int level = 0; level < zigg.getEpmems().size(); level++)
+        {
+            ActionGraph graph = zigg.getActionGraph(level);
+            ActionGraph lazyGraph = lazy.getActionGraph(level);
+            assertTrue(graph.numNodes() == lazyGraph.numNodes());
+            lazyGraph.getRewardField().settle();
+            for(int node = 0; node < graph.numNodes(); node++)
+            {
+                assertTrue(graph.getRewardField().getDistance(node)
+                           == lazyGraph.getRewardField().getDistance(node));
+            }
+        }
+	}//test_repairBudget
+
+	@Test
+	public void test_planRepair()
+    {
+        //Check every plan that is repaired
+        Environment env = new SimplifiedRoombaEnvironment();
+        Ziggurat zigg = new RepairZiggurat(env);
+        zigg.setRandSeed(1);
+        zigg.setMonitor(new MonitorNull(env));
+        zigg.setPlanRepairDepth(3);
+        WMESet sensors = env.generateCurrentWMESet();
+        for(int i = 0; i < 2000; i++)
+        {
+            sensors = env.takeStep(zigg.tick(sensors));
+        }
+
+        //Only the Zigg that is allowed to should repair its plans
+        Ziggurat plain = runZigg(1, 2000, null);
+        assertTrue(zigg.getNumPlanRepairs() > 0);
+        assertTrue(plain.getNumPlanRepairs() == 0);
+	}//test_planRepair
+
+	@Test
+	public void test_approximateOrientation()
+    {
+        Environment env = new SimplifiedRoombaEnvironment();
+        ApproxZiggurat zigg = new ApproxZiggurat(env);
+        zigg.setRandSeed(1);
+        zigg.setMonitor(new MonitorNull(env));
+        int window = 6;
+        zigg.setApproximateOrientation(2, window);
+
+        //A match must end before the recent episodes it matches begin or
+        //else the agent would orient itself onto its own newest episode
+        WMESet sensors = env.generateCurrentWMESet();
+        int numMatches = 0;
+        for(int i = 0; i < 500; i++)
+        {
+            sensors = env.takeStep(zigg.tick(sensors));
+            for(int level = 1; level < zigg.getEpmems().size(); level++)
+            {
+                ApproximateMatcher.Match match = zigg.approxMatch(level);
+                if (match == null) continue;
+                int len = zigg.indexLength(level);
+                assertTrue(match.end <= len - Math.min(window, len - 1) - 1);
+                numMatches++;
+            }
+        }
+        assertTrue(numMatches > 0);
+	}//test_approximateOrientation
+
 	// END Test cases --------------------------------------
 
     /**
@@ -334,6 +870,18 @@ public class ZiggSimpleRoombaTest
     {
         ZiggSimpleRoombaTest zsrt = new ZiggSimpleRoombaTest();
         zsrt.test_Zigg();
+        zsrt.test_levelLimits();
+        zsrt.test_asyncUpdates();
+        zsrt.test_tickBatch();
+        zsrt.test_parallelUniqueness();
+        zsrt.test_parallelOrientation();
+        zsrt.test_rewardField();
+        zsrt.test_aStar();
+        zsrt.test_bidirectional();
+        zsrt.test_planBudget();
+        zsrt.test_repairBudget();
+        zsrt.test_planRepair();
+        zsrt.test_approximateOrientation();
     }
 	
 }//class ZiggSimpleRoombaTest
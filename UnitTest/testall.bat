@@ -57,6 +57,11 @@ echo BEGIN TEST: %TESTNAME%
 java -cp %CP% org.junit.runner.JUnitCore UnitTest.%TESTNAME%
 if NOT ERRORLEVEL 0 GOTO end
 
+SET TESTNAME=SequenceTrieTest
+echo BEGIN TEST: %TESTNAME%
+java -cp %CP% org.junit.runner.JUnitCore UnitTest.%TESTNAME%
+if NOT ERRORLEVEL 0 GOTO end
+
 SET TESTNAME=FlipSystemEnvironmentTest
 echo BEGIN TEST: %TESTNAME%
 java -cp %CP% org.junit.runner.JUnitCore UnitTest.%TESTNAME%
@@ -87,6 +92,46 @@ echo BEGIN TEST: %TESTNAME%
 java -cp %CP% org.junit.runner.JUnitCore UnitTest.%TESTNAME%
 if NOT ERRORLEVEL 0 GOTO end
 
+SET TESTNAME=TraceTest
+echo BEGIN TEST: %TESTNAME%
+java -cp %CP% org.junit.runner.JUnitCore UnitTest.%TESTNAME%
+if NOT ERRORLEVEL 0 GOTO end
+
+SET TESTNAME=SuffixAutomatonTest
+echo BEGIN TEST: %TESTNAME%
+java -cp %CP% org.junit.runner.JUnitCore UnitTest.%TESTNAME%
+if NOT ERRORLEVEL 0 GOTO end
+
+SET TESTNAME=ContextTreeTest
+echo BEGIN TEST: %TESTNAME%
+java -cp %CP% org.junit.runner.JUnitCore UnitTest.%TESTNAME%
+if NOT ERRORLEVEL 0 GOTO end
+
+SET TESTNAME=NoveltyFilterTest
+echo BEGIN TEST: %TESTNAME%
+java -cp %CP% org.junit.runner.JUnitCore UnitTest.%TESTNAME%
+if NOT ERRORLEVEL 0 GOTO end
+
+SET TESTNAME=CommandTrackerTest
+echo BEGIN TEST: %TESTNAME%
+java -cp %CP% org.junit.runner.JUnitCore UnitTest.%TESTNAME%
+if NOT ERRORLEVEL 0 GOTO end
+
+SET TESTNAME=ApproximateMatcherTest
+echo BEGIN TEST: %TESTNAME%
+java -cp %CP% org.junit.runner.JUnitCore UnitTest.%TESTNAME%
+if NOT ERRORLEVEL 0 GOTO end
+
+SET TESTNAME=ActionGraphTest
+echo BEGIN TEST: %TESTNAME%
+java -cp %CP% org.junit.runner.JUnitCore UnitTest.%TESTNAME%
+if NOT ERRORLEVEL 0 GOTO end
+
+SET TESTNAME=PlanCacheTest
+echo BEGIN TEST: %TESTNAME%
+java -cp %CP% org.junit.runner.JUnitCore UnitTest.%TESTNAME%
+if NOT ERRORLEVEL 0 GOTO end
+
 
 
 :end
@@ -1,6 +1,7 @@
 package Ziggurat;
  
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <!-- class Action -->
@@ -17,11 +18,17 @@ public class Action extends DecisionElement
      */
     /** used for {@link #toString} */
     public static NullEnvironment nullEnv = new NullEnvironment();
+
+    /** used to generate a unique id for each action.  Actions may be created
+     * by more than one thread (see {@link Ziggurat#setAsyncUpdates}) */
+    protected static AtomicInteger nextID = new AtomicInteger(0);
     
     /*======================================================================
      * Instance Variables
      *----------------------------------------------------------------------
      */
+    /** each action is assigned a unique id */
+    private int id = -1;
     /** left-hand-side episode */
 	protected Episode lhs;
     /** right-hand-side episode */
@@ -46,10 +53,12 @@ public class Action extends DecisionElement
         cousins = new Vector<Action>();
         cousins.add(this);
         utility = 0.0;
+        id = nextID.getAndIncrement();
 	}//ctor
 
 
     /* accessor methods */
+    public int getID() { return id; }
     public Episode getLHS() { return lhs; }
     public Episode getRHS() { return rhs; }
     public Episode[] getEpisodes() { return new Episode[] {lhs,rhs}; }
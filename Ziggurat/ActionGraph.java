@@ -0,0 +1,226 @@
+package Ziggurat;
+
+import java.util.*;
+
+/**
+ * <!-- class ActionGraph -->
+ *
+ * An ActionGraph holds the connections between the sequences at one level of
+ * the hierarchy that the planner needs.  Each node is a (canonical) sequence
+ * at that level and each edge is an action at the level above whose LHS and
+ * RHS episodes contain the two sequences.  Ziggurat adds an edge as each new
+ * action is learned (see {@link Ziggurat#update}) so {@link
+ * Ziggurat#findRoute} can follow edges without searching the episodes and
+ * actions for them.
+ *
+ * <p>The edges out of each node are kept in growable int arrays in the order
+ * the actions were learned, which is the same order as the action's cousin
+ * list.  Each edge is weighted by the number of elemental episodes in the
+ * sequence it leads to.  The edges into each node are also kept so that the
+ * graph's {@link RewardField} can be maintained as edges are added.
+ */
+public class ActionGraph
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+    /** initial capacity of the node arrays */
+    public static final int INIT_CAPACITY = 64;
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    /** the node for each sequence indexed by sequence id */
+    protected HashMap<Integer,Integer> nodeIndex = new HashMap<Integer,Integer>();
+    /** the sequence for each node */
+    protected Sequence[] nodeSeqs = new Sequence[INIT_CAPACITY];
+    /** the number of nodes */
+    protected int numNodes = 0;
+    /** the node each edge leads to (indexed by node and then edge) */
+    protected int[][] targets = new int[INIT_CAPACITY][];
+    /** the weight of each edge */
+    protected int[][] weights = new int[INIT_CAPACITY][];
+    /** the index of each edge's action in {@link #edgeActs} */
+    protected int[][] actIndexes = new int[INIT_CAPACITY][];
+    /** the number of edges out of each node */
+    protected int[] numEdges = new int[INIT_CAPACITY];
+    /** the action for each edge in the order they were added */
+    protected Vector<Action> edgeActs = new Vector<Action>();
+    /** the nodes with an edge into each node */
+    protected int[][] sources = new int[INIT_CAPACITY][];
+    /** the index of each of those edges in its source node's edges */
+    protected int[][] sourceEdges = new int[INIT_CAPACITY][];
+    /** the number of edges into each node */
+    protected int[] numSources = new int[INIT_CAPACITY];
+    /** the level of the sequences in this graph */
+    protected int level;
+    /** the distance from each node to a reward */
+    protected RewardField rewardField;
+    /** the number of times a node or edge has been added */
+    protected int generation = 0;
+
+    /*======================================================================
+     * Constructors
+     *----------------------------------------------------------------------
+     */
+    /** creates an empty graph for the sequences at a given level */
+    public ActionGraph(int level)
+    {
+        this.level = level;
+        this.rewardField = new RewardField(this);
+    }//ctor
+
+    /*======================================================================
+     * Accessors
+     *----------------------------------------------------------------------
+     */
+    /** @return the level of the sequences in this graph */
+    public int getLevel() { return this.level; }
+
+    /** @return the distance from each node to a reward */
+    public RewardField getRewardField() { return this.rewardField; }
+
+    /** @return the number of times a node or edge has been added.  Routes
+     *          found in the graph are only valid while this is unchanged. */
+    public int getGeneration() { return this.generation; }
+
+    /** @return the number of nodes in the graph */
+    public int numNodes() { return this.numNodes; }
+
+    /** @return the number of edges in the graph */
+    public int numEdges() { return this.edgeActs.size(); }
+
+    /** @return the number of edges out of a given node */
+    public int numEdges(int node) { return this.numEdges[node]; }
+
+    /** @return the sequence for a given node */
+    public Sequence getSequence(int node) { return this.nodeSeqs[node]; }
+
+    /** @return the node that a given edge leads to */
+    public int getTarget(int node, int edge) { return this.targets[node][edge]; }
+
+    /** @return the weight of a given edge */
+    public int getWeight(int node, int edge) { return this.weights[node][edge]; }
+
+    /** @return the number of edges into a given node */
+    public int numSources(int node) { return this.numSources[node]; }
+
+    /** @return the node that a given edge into a node comes from */
+    public int getSource(int node, int i) { return this.sources[node][i]; }
+
+    /** @return the index of a given edge into a node among its source's
+     *          edges */
+    public int getSourceEdge(int node, int i) { return this.sourceEdges[node][i]; }
+
+    /** @return the action for a given edge */
+    public Action getAction(int node, int edge)
+    {
+        return this.edgeActs.elementAt(this.actIndexes[node][edge]);
+    }
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+    /**
+     * findNode
+     *
+     * @return the node for a given sequence or -1 if it isn't in the graph
+     */
+    public int findNode(Sequence seq)
+    {
+        Integer node = this.nodeIndex.get(seq.getID());
+        return (node == null) ? -1 : node;
+    }//findNode
+
+    /**
+     * addNode
+     *
+     * @return the node for a given sequence.  The node is created if needed.
+     */
+    public int addNode(Sequence seq)
+    {
+        Integer node = this.nodeIndex.get(seq.getID());
+        if (node != null) return node;
+
+        //Grow the arrays if needed
+        if (this.numNodes == this.nodeSeqs.length)
+        {
+            int newCap = this.nodeSeqs.length * 2;
+            this.nodeSeqs = Arrays.copyOf(this.nodeSeqs, newCap);
+            this.targets = Arrays.copyOf(this.targets, newCap);
+            this.weights = Arrays.copyOf(this.weights, newCap);
+            this.actIndexes = Arrays.copyOf(this.actIndexes, newCap);
+            this.numEdges = Arrays.copyOf(this.numEdges, newCap);
+            this.sources = Arrays.copyOf(this.sources, newCap);
+            this.sourceEdges = Arrays.copyOf(this.sourceEdges, newCap);
+            this.numSources = Arrays.copyOf(this.numSources, newCap);
+        }
+
+        node = this.numNodes++;
+        this.nodeSeqs[node] = seq;
+        this.nodeIndex.put(seq.getID(), node);
+        this.generation++;
+        this.rewardField.nodeAdded(node);
+        return node;
+    }//addNode
+
+    /**
+     * addEdge
+     *
+     * adds an edge for a newly learned action
+     *
+     * @param act  an action whose LHS and RHS are {@link SequenceEpisode}s
+     *             containing sequences at this graph's level
+     */
+    public void addEdge(Action act)
+    {
+        Sequence lhsSeq = ((SequenceEpisode)act.getLHS()).getSequence();
+        Sequence rhsSeq = ((SequenceEpisode)act.getRHS()).getSequence();
+        int from = addNode(lhsSeq);
+        int to = addNode(rhsSeq);
+
+        //Grow this node's edge arrays if needed
+        int n = this.numEdges[from];
+        if (this.targets[from] == null)
+        {
+            this.targets[from] = new int[2];
+            this.weights[from] = new int[2];
+            this.actIndexes[from] = new int[2];
+        }
+        else if (n == this.targets[from].length)
+        {
+            this.targets[from] = Arrays.copyOf(this.targets[from], n * 2);
+            this.weights[from] = Arrays.copyOf(this.weights[from], n * 2);
+            this.actIndexes[from] = Arrays.copyOf(this.actIndexes[from], n * 2);
+        }
+
+        this.targets[from][n] = to;
+        this.weights[from][n] = rhsSeq.numElementalEpisodes();
+        this.actIndexes[from][n] = this.edgeActs.size();
+        this.edgeActs.add(act);
+        this.numEdges[from]++;
+
+        //Record the edge at the other end too
+        int m = this.numSources[to];
+        if (this.sources[to] == null)
+        {
+            this.sources[to] = new int[2];
+            this.sourceEdges[to] = new int[2];
+        }
+        else if (m == this.sources[to].length)
+        {
+            this.sources[to] = Arrays.copyOf(this.sources[to], m * 2);
+            this.sourceEdges[to] = Arrays.copyOf(this.sourceEdges[to], m * 2);
+        }
+        this.sources[to][m] = from;
+        this.sourceEdges[to][m] = n;
+        this.numSources[to]++;
+
+        this.generation++;
+        this.rewardField.edgeAdded(from, n);
+    }//addEdge
+
+}//class ActionGraph
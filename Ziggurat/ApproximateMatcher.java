@@ -0,0 +1,219 @@
+package Ziggurat;
+
+import java.util.*;
+
+/**
+ * <!-- class ApproximateMatcher -->
+ *
+ * An ApproximateMatcher finds the places in a series of symbols where a short
+ * pattern occurs with a limited number of errors (substitutions, insertions
+ * or deletions).  Ziggurat uses it to orient itself when a single noisy
+ * episode breaks what would otherwise be a long exact match (see {@link
+ * Ziggurat#setApproximateOrientation}).
+ *
+ * <p>The search is Myers' bit-parallel algorithm: the edit distance between
+ * the pattern and the best substring ending at each position is tracked as a
+ * column of bits in a single long so each symbol of the text takes a handful
+ * of word operations regardless of the number of errors allowed.  As a result
+ * the pattern can be at most {@link #MAX_WINDOW} symbols long.  The bits for
+ * each distinct symbol in the pattern are kept in a pair of small sorted
+ * arrays so looking up a symbol of the text doesn't allocate anything.
+ */
+public class ApproximateMatcher
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+    /** the longest pattern that can be matched */
+    public static final int MAX_WINDOW = 64;
+
+    /*======================================================================
+     * Inner Classes
+     *----------------------------------------------------------------------
+     */
+    /**
+     * class Match
+     *
+     * describes an approximate occurrence of the pattern
+     */
+    public static class Match
+    {
+        /** the position where the occurrence begins */
+        public int start;
+        /** the position where the occurrence ends */
+        public int end;
+        /** the number of errors in the occurrence */
+        public int errors;
+
+        public Match(int start, int end, int errors)
+        {
+            this.start = start;
+            this.end = end;
+            this.errors = errors;
+        }
+
+        /** @return the number of symbols of the text in the occurrence */
+        public int length() { return this.end - this.start + 1; }
+    }//class Match
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    /** the pattern */
+    protected int[] pattern;
+    /** the distinct symbols in the pattern (sorted) */
+    protected int[] symbols;
+    /** for each entry in {@link #symbols}, a bit is set at each position of
+     * the pattern where it occurs */
+    protected long[] peq;
+    /** the length of the pattern */
+    protected int patLen;
+
+    /*======================================================================
+     * Constructors
+     *----------------------------------------------------------------------
+     */
+    /**
+     * creates a matcher for a given pattern
+     *
+     * @param pattern  an array containing the pattern
+     * @param from     the index of the first symbol of the pattern
+     * @param len      the length of the pattern (1 to {@link #MAX_WINDOW})
+     */
+    public ApproximateMatcher(int[] pattern, int from, int len)
+    {
+        if ((len < 1) || (len > MAX_WINDOW))
+        {
+            throw new IllegalArgumentException("pattern length must be 1 to " + MAX_WINDOW);
+        }
+
+        this.patLen = len;
+        this.pattern = Arrays.copyOfRange(pattern, from, from + len);
+
+        //Find the distinct symbols
+        int[] sorted = this.pattern.clone();
+        Arrays.sort(sorted);
+        int numSymbols = 0;
+        for(int i = 0; i < len; i++)
+        {
+            if ((i == 0) || (sorted[i] != sorted[i-1])) sorted[numSymbols++] = sorted[i];
+        }
+        this.symbols = Arrays.copyOf(sorted, numSymbols);
+
+        //Record where each one occurs
+        this.peq = new long[numSymbols];
+        for(int i = 0; i < len; i++)
+        {
+            this.peq[Arrays.binarySearch(this.symbols, this.pattern[i])] |= 1L << i;
+        }
+    }//ctor
+
+    /*======================================================================
+     * Accessors
+     *----------------------------------------------------------------------
+     */
+    /** @return the length of the pattern */
+    public int length() { return this.patLen; }
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+    /**
+     * findBest
+     *
+     * finds the occurrence of the pattern with the fewest errors in a given
+     * portion of a text.  If more than one occurrence has the fewest errors
+     * the earliest is returned.
+     *
+     * @param text       an array containing the text
+     * @param limit      the latest position in the text where an occurrence
+     *                   may end (the text is searched from position 0)
+     * @param maxErrors  the most errors allowed
+     *
+     * @return the best occurrence or null if there are none with maxErrors
+     *         or fewer errors
+     */
+    public Match findBest(int[] text, int limit, int maxErrors)
+    {
+        int bestEnd = -1;
+        int bestScore = maxErrors + 1;
+        long pv = -1L;          // vertical positive deltas
+        long mv = 0L;           // vertical negative deltas
+        long highBit = 1L << (this.patLen - 1);
+        int score = this.patLen;
+
+        for(int j = 0; j <= limit; j++)
+        {
+            int index = Arrays.binarySearch(this.symbols, text[j]);
+            long eq = (index < 0) ? 0L : this.peq[index];
+
+            //Advance the column of edit distances by one symbol
+            long xv = eq | mv;
+            long xh = (((eq & pv) + pv) ^ pv) | eq;
+            long ph = mv | ~(xh | pv);
+            long mh = pv & xh;
+            if ((ph & highBit) != 0) score++;
+            else if ((mh & highBit) != 0) score--;
+            ph <<= 1;
+            mh <<= 1;
+            pv = mh | ~(xv | ph);
+            mv = ph & xv;
+
+            //Is this the best occurrence so far?
+            if (score < bestScore)
+            {
+                bestEnd = j;
+                bestScore = score;
+                if (score == 0) break;
+            }
+        }//for
+
+        if (bestEnd == -1) return null;
+        return new Match(findStart(text, bestEnd, bestScore), bestEnd, bestScore);
+    }//findBest
+
+    /**
+     * findStart
+     *
+     * is a helper for {@link #findBest}.  The bit-parallel search only finds
+     * where an occurrence ends so this aligns the pattern backward from there
+     * (with the usual dynamic programming) to find where it begins.  If it
+     * could begin in more than one place the longest occurrence is used.
+     *
+     * @param text    an array containing the text
+     * @param end     the position where the occurrence ends
+     * @param errors  the number of errors in the occurrence
+     *
+     * @return the position where the occurrence begins
+     */
+    protected int findStart(int[] text, int end, int errors)
+    {
+        //An occurrence can't be longer than the pattern plus its errors.
+        //dist[i] is the edit distance between the last i symbols of the
+        //pattern and the last j symbols of the text (ending at end).
+        int maxLen = Math.min(end + 1, this.patLen + errors);
+        int[] dist = new int[this.patLen + 1];
+        for(int i = 0; i <= this.patLen; i++) dist[i] = i;
+
+        int start = end + 1 - this.patLen;
+        for(int j = 1; j <= maxLen; j++)
+        {
+            int diag = dist[0];
+            dist[0] = j;
+            for(int i = 1; i <= this.patLen; i++)
+            {
+                int up = dist[i];
+                int cost = (this.pattern[this.patLen - i] == text[end + 1 - j]) ? 0 : 1;
+                dist[i] = Math.min(Math.min(dist[i] + 1, dist[i-1] + 1), diag + cost);
+                diag = up;
+            }
+            if (dist[this.patLen] == errors) start = end + 1 - j;
+        }//for
+
+        return start;
+    }//findStart
+
+}//class ApproximateMatcher
@@ -0,0 +1,111 @@
+package Ziggurat;
+
+import java.util.*;
+
+/**
+ * <!-- class CommandTracker -->
+ *
+ * A CommandTracker records which commands the agent has tried in each
+ * distinct sensor state.  When the environment has a large number of commands
+ * this lets the agent find one that it has never tried in its current state
+ * without considering each command in turn.
+ *
+ * <p>Sensors are identified by their ids in a {@link SymbolTable}.
+ */
+public class CommandTracker
+{
+    /*======================================================================
+     * Inner Classes
+     *----------------------------------------------------------------------
+     */
+    /**
+     * class Entry
+     *
+     * the commands tried in a single sensor state
+     */
+    protected static class Entry
+    {
+        /** a bit is set for each command that has been tried */
+        protected BitSet tried = new BitSet();
+        /** the number of bits set in {@link #tried} */
+        protected int numTried = 0;
+    }//class Entry
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    /** the commands tried in each sensor state indexed by sensor id */
+    protected HashMap<Integer,Entry> entries = new HashMap<Integer,Entry>();
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+    /**
+     * markTried
+     *
+     * records that a command has been tried in the given sensor state
+     */
+    public void markTried(int sensorId, int cmd)
+    {
+        Entry entry = this.entries.get(sensorId);
+        if (entry == null)
+        {
+            entry = new Entry();
+            this.entries.put(sensorId, entry);
+        }
+
+        if (! entry.tried.get(cmd))
+        {
+            entry.tried.set(cmd);
+            entry.numTried++;
+        }
+    }//markTried
+
+    /** @return true if the given command has been tried in the given sensor
+     *          state (-1 for sensors that have never been seen) */
+    public boolean isTried(int sensorId, int cmd)
+    {
+        Entry entry = this.entries.get(sensorId);
+        return (entry != null) && entry.tried.get(cmd);
+    }//isTried
+
+    /**
+     * numUntried
+     *
+     * @return the number of commands that have not been tried in the given
+     *         sensor state
+     */
+    public int numUntried(int sensorId, int numCmds)
+    {
+        Entry entry = this.entries.get(sensorId);
+        if (entry == null) return numCmds;
+        return numCmds - entry.numTried;
+    }//numUntried
+
+    /**
+     * findUntried
+     *
+     * finds the first command that has not been tried in the given sensor
+     * state starting from a given command and wrapping around to zero.
+     *
+     * @param sensorId  the id of the sensors (-1 if never seen)
+     * @param startCmd  the command to start from
+     * @param numCmds   the number of commands
+     *
+     * @return the command or -1 if every command has been tried
+     */
+    public int findUntried(int sensorId, int startCmd, int numCmds)
+    {
+        Entry entry = this.entries.get(sensorId);
+        if (entry == null) return startCmd;
+        if (entry.numTried >= numCmds) return -1;
+
+        int cmd = entry.tried.nextClearBit(startCmd);
+        if (cmd < numCmds) return cmd;
+        cmd = entry.tried.nextClearBit(0);
+        return (cmd < startCmd) ? cmd : -1;
+    }//findUntried
+
+}//class CommandTracker
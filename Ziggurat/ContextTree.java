@@ -0,0 +1,195 @@
+package Ziggurat;
+
+import java.util.*;
+
+/**
+ * <!-- class ContextTree -->
+ *
+ * A ContextTree is a trie over the agent's level 0 history read backwards.
+ * It answers the question that {@link Ziggurat#calcUniqueness} asks -- how
+ * many of the most recent episodes would have to be included before taking a
+ * given command in the current sensor state would be new -- for every command
+ * at once, in time proportional to the tree's depth instead of the length of
+ * the history.
+ *
+ * <p>Each node corresponds to a context: a series of episodes read backwards
+ * from some position in the history.  The root is the empty context.  Each
+ * node records, for each sensor state, the set of commands that the agent has
+ * taken in that sensor state immediately after that context.
+ *
+ * <p>Contexts are only stored up to a fixed depth so the answer for a command
+ * is exact up to that depth.  A command whose answer is the depth itself has
+ * been "saturated" and its true answer may be larger.
+ *
+ * <p>Episodes and sensors are identified by their ids in a {@link
+ * SymbolTable}.
+ */
+public class ContextTree
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+    /** the default maximum depth */
+    public static final int DEFAULT_DEPTH = 8;
+
+    /*======================================================================
+     * Inner Classes
+     *----------------------------------------------------------------------
+     */
+    /**
+     * class Node
+     *
+     * a single context in the tree
+     */
+    protected static class Node
+    {
+        /** longer contexts indexed by the id of the episode that precedes
+         * this context */
+        protected HashMap<Integer,Node> children = null;
+        /** the commands taken after this context indexed by sensor id */
+        protected HashMap<Integer,BitSet> cmds = new HashMap<Integer,BitSet>();
+    }//class Node
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    /** the empty context */
+    protected Node root = new Node();
+    /** the maximum depth (the largest answer that is exact) */
+    protected int depth;
+    /** the ids of the most recent episodes (the newest is at recentPos) */
+    protected int[] recent;
+    /** position of the newest episode in {@link #recent} */
+    protected int recentPos = 0;
+    /** the number of episodes added so far */
+    protected int size = 0;
+
+    /*======================================================================
+     * Constructors
+     *----------------------------------------------------------------------
+     */
+    /** creates an empty tree with a given maximum depth (at least 1) */
+    public ContextTree(int depth)
+    {
+        this.depth = Math.max(1, depth);
+        this.recent = new int[this.depth];
+    }//ctor
+
+    /*======================================================================
+     * Accessors
+     *----------------------------------------------------------------------
+     */
+    /** @return the maximum depth of the tree */
+    public int getDepth() { return this.depth; }
+
+    /** @return the number of episodes that have been added */
+    public int size() { return this.size; }
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+    /**
+     * getRecent
+     *
+     * @return the id of the episode that was added a given number of episodes
+     *         before the newest one (0 is the newest).
+     */
+    protected int getRecent(int back)
+    {
+        int pos = (this.recentPos - back + this.recent.length) % this.recent.length;
+        return this.recent[pos];
+    }//getRecent
+
+    /** records that a given command was taken after a given context */
+    protected static void addCmd(Node node, int sensorId, int cmd)
+    {
+        BitSet bits = node.cmds.get(sensorId);
+        if (bits == null)
+        {
+            bits = new BitSet();
+            node.cmds.put(sensorId, bits);
+        }
+        bits.set(cmd);
+    }//addCmd
+
+    /**
+     * add
+     *
+     * adds the next episode in the history.  The episode's command must be
+     * final.
+     *
+     * @param episodeId  the id of the episode
+     * @param sensorId   the id of the episode's sensors
+     * @param cmd        the episode's command
+     */
+    public void add(int episodeId, int sensorId, int cmd)
+    {
+        //Record the command after every context that precedes this episode
+        Node node = this.root;
+        addCmd(node, sensorId, cmd);
+        int maxBack = Math.min(this.depth - 1, this.size);
+        for(int back = 0; back < maxBack; back++)
+        {
+            int key = getRecent(back);
+            if (node.children == null) node.children = new HashMap<Integer,Node>();
+            Node child = node.children.get(key);
+            if (child == null)
+            {
+                child = new Node();
+                node.children.put(key, child);
+            }
+            node = child;
+            addCmd(node, sensorId, cmd);
+        }
+
+        //This episode is now the newest
+        this.recentPos = (this.recentPos + 1) % this.recent.length;
+        this.recent[this.recentPos] = episodeId;
+        this.size++;
+    }//add
+
+    /**
+     * calcUniqueness
+     *
+     * calculates how many of the most recent episodes would have to be
+     * included to make taking each command in the given sensor state part of
+     * a series of episodes that has not been seen before.  (See {@link
+     * Ziggurat#calcUniqueness}.)
+     *
+     * @param sensorId  the id of the current sensors (or -1 if they have never
+     *                  been seen)
+     * @param numCmds   the number of commands
+     *
+     * @return the answer for each command.  An answer that equals {@link
+     *         #getDepth} is a lower bound.
+     */
+    public int[] calcUniqueness(int sensorId, int numCmds)
+    {
+        int[] result = new int[numCmds];
+        if (sensorId == -1) return result;
+
+        //Walk the contexts that match the recent history.  Each is a subset of
+        //the one before so stop as soon as one is missing.
+        Node node = this.root;
+        for(int d = 0; d < this.depth; d++)
+        {
+            BitSet bits = node.cmds.get(sensorId);
+            if (bits == null) break;
+            for(int cmd = bits.nextSetBit(0); (cmd >= 0) && (cmd < numCmds); cmd = bits.nextSetBit(cmd + 1))
+            {
+                result[cmd] = d + 1;
+            }
+
+            //Move to the next longer context
+            if ((d >= this.size) || (node.children == null)) break;
+            node = node.children.get(getRecent(d));
+            if (node == null) break;
+        }
+
+        return result;
+    }//calcUniqueness
+
+}//class ContextTree
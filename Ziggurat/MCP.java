@@ -1,5 +1,6 @@
 package Ziggurat;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -28,6 +29,20 @@ public class MCP
      * This is usually used to maximize the speed of data gathering.
      */
     private static boolean nullMonitor = false;
+    /** the maximum number of levels in Zigg's hierarchy.  The default, -1,
+     * indicates to use Ziggurat's default */
+    private static int depth = -1;
+    /** the minimum sequence reuse ratio for growing a new level.  The default,
+     * 0.0, disables adaptive mode. */
+    private static double adaptRatio = 0.0;
+    /** this boolean is set to indicate that Zigg should update the levels above
+     * level 0 in the background */
+    private static boolean asyncUpdates = false;
+    /** if set, the agent's experience is recorded to this trace file */
+    private static String recordFile = null;
+    /** if set, the agent learns from this trace file instead of the
+     * environment */
+    private static String replayFile = null;
 
     /** A list of the names of valid environments.  Please keep this up to date! */
     private static String[] validEnvStrs = { "flipsystem", "flippredict", "roomba", "soar" };
@@ -54,6 +69,12 @@ public class MCP
             System.out.println("\ttrials=<num> - the number of rewards the agent should complete");
             System.out.println("\tseed=<num>   - a fixed random number seed for this run");
             System.out.println("\tmon=null     - use a MonitorNull object");
+            System.out.println("\tdepth=<num>  - the maximum number of levels in the hierarchy");
+            System.out.println("\tadapt=<num>  - only grow a level when the level below reuses");
+            System.out.println("\t               at least this fraction of its sequences");
+            System.out.println("\tasync=on     - update the higher levels in a background thread");
+            System.out.println("\trecord=<file> - record the agent's experience to a trace file");
+            System.out.println("\treplay=<file> - learn from a trace file instead of running");
 
             return;
         }
@@ -83,12 +104,42 @@ public class MCP
             zigg.setRandSeed(seed);
         }
 
+        //Configure the hierarchy if specified
+        if (depth != -1)
+        {
+            zigg.setMaxLevelDepth(depth);
+        }
+        zigg.setMinReuseRatio(adaptRatio);
+        zigg.setAsyncUpdates(asyncUpdates);
+
         //If instructed to do so, turn off all monitor output
         if (nullMonitor)
         {
             zigg.setMonitor(new MonitorNull());
         }
 
+        //Learn from a trace instead of the environment if specified
+        if (replayFile != null)
+        {
+            replay(zigg, replayFile);
+            return;
+        }
+
+        //Record the run if specified
+        TraceWriter trace = null;
+        if (recordFile != null)
+        {
+            try
+            {
+                trace = new TraceWriter(recordFile);
+            }
+            catch(IOException ioe)
+            {
+                System.err.println("Could not create trace file " + recordFile + ": " + ioe.getMessage());
+                System.exit(0);
+            }
+        }
+
 		WMESet currentSensors = env.generateCurrentWMESet();
         int numRewards = 0;
         while(numRewards < targetRewards)
@@ -97,13 +148,75 @@ public class MCP
 			// Ziggurat sent to the environment based on the previous
 			// sensor data.
         	int action = zigg.tick(currentSensors);
+            if (trace != null) record(trace, currentSensors, action);
 			currentSensors = env.takeStep(action);
 
             //Stop after N goals
             WME w = currentSensors.getAttr(WME.REWARD_STRING);
             if (w.getDouble() > 0.0) numRewards++;
 		}//while
+
+        if (trace != null) record(trace, null, -1);
 	}//main
+
+    /**
+     * record
+     *
+     * writes a single step to a trace file.  Call with null sensors to close
+     * the trace.
+     */
+    private static void record(TraceWriter trace, WMESet sensors, int action)
+    {
+        try
+        {
+            if (sensors == null)
+            {
+                trace.close();
+            }
+            else
+            {
+                trace.write(sensors, action);
+            }
+        }
+        catch(IOException ioe)
+        {
+            System.err.println("Could not write trace file " + recordFile + ": " + ioe.getMessage());
+            System.exit(0);
+        }
+    }//record
+
+    /**
+     * replay
+     *
+     * has a given agent learn from every step in a trace file and reports the
+     * size of the resulting memory
+     */
+    private static void replay(Ziggurat zigg, String fileName)
+    {
+        try
+        {
+            TraceReader trace = new TraceReader(fileName);
+            long start = System.currentTimeMillis();
+            int steps = zigg.replay(trace);
+            trace.close();
+            long elapsed = System.currentTimeMillis() - start;
+
+            System.out.println("Replayed " + steps + " steps in " + elapsed + "ms");
+            Vector<Vector<Episode>> epmems = zigg.getEpmems();
+            for(int level = 0; level < epmems.size(); level++)
+            {
+                System.out.println("Level " + level + ": "
+                                   + epmems.elementAt(level).size() + " episodes, "
+                                   + zigg.getActions().elementAt(level).size() + " actions, "
+                                   + zigg.getSequences().elementAt(level).size() + " sequences");
+            }
+        }
+        catch(IOException ioe)
+        {
+            System.err.println("Could not replay trace file " + fileName + ": " + ioe.getMessage());
+            System.exit(0);
+        }
+    }//replay
 	
 	/**
      * Given some predetermined environment names, initialize the 
@@ -158,6 +271,36 @@ public class MCP
             }
             catch(NumberFormatException nfe) {}
         }
+        else if (name.equals("depth"))
+        {
+            try
+            {
+                int num = Integer.parseInt(value);
+                if (num >= 2) depth = num;
+            }
+            catch(NumberFormatException nfe) {}
+        }
+        else if (name.equals("adapt"))
+        {
+            try
+            {
+                double num = Double.parseDouble(value);
+                if ((num >= 0.0) && (num <= 1.0)) adaptRatio = num;
+            }
+            catch(NumberFormatException nfe) {}
+        }
+        else if (name.equals("record"))
+        {
+            recordFile = value;
+        }
+        else if (name.equals("replay"))
+        {
+            replayFile = value;
+        }
+        else if (name.equals("async"))
+        {
+            asyncUpdates = value.equals("on");
+        }
         else if (name.equals("mon"))
         {
             if (value.equals("null"))
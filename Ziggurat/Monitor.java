@@ -11,6 +11,12 @@ import Ziggurat.Episode;
  * record given strings to a log.  The constructors must also be modified to
  * call the corresponding super().
  *
+ * <p>Ziggurat may log from a background thread (see {@link
+ * Ziggurat#setAsyncUpdates}) so each thread has its own indentation and stack
+ * of method calls.  The methods that print are synchronized so that lines from
+ * different threads don't run together.  A thread can also silence its own
+ * messages for a while (see {@link #setQuiet}) without affecting the others.
+ *
  * @see MonitorStdOut
  * @see MonitorNull
  *
@@ -25,14 +31,47 @@ public abstract class Monitor
     public static int INDENT_SIZE = 4;
     
     /*======================================================================
-     * Instance Variables
+     * Inner Classes
      *----------------------------------------------------------------------
      */
-    /** this specifies how far to indent messages. */
-    private int indent = 0;
+    /**
+     * class CallState
+     *
+     * the indentation state of a single thread
+     */
+    private static class CallState
+    {
+        /** this specifies how far to indent messages. */
+        private int indent = 0;
+
+        /** keeps track of the current stack of method calls as best as it
+         * is able */
+        private Vector<String> stack = new Vector<String>();
+
+        /**
+         * a user can temporarily increase the indent level.  This variable
+         * tracks that temporary indent amount.
+         */
+        private int tempIndent = 0;
 
-    /** keeps track of the current stack of method calls as best as it is able */
-    private Vector<String> stack = new Vector<String>();
+        /**
+         * a user can log a line in parts using {@link Monitor#logPart}.  This
+         * boolean tracks whether a partial log has been added yet.
+         */
+        private boolean inPart = false;
+
+        /** when this is true, nothing is printed */
+        private boolean quiet = false;
+    }//class CallState
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    /** the indentation state of each thread that logs to this monitor */
+    private ThreadLocal<CallState> callState = new ThreadLocal<CallState>() {
+            protected CallState initialValue() { return new CallState(); }
+        };
 
     /** keeps count of how many rewards have been received so far */
     private int rewardCount = 0;
@@ -42,18 +81,6 @@ public abstract class Monitor
      */
     private Environment env = null;
 
-    /**
-     * a user can temporarily increase the indent level.  This variable tracks
-     * that temporary indent amount.
-     */
-    private int tempIndent = 0;
-
-    /**
-     * a user can log a line in parts using {@link #logPart}.  This boolean
-     * tracks whether a partial log has been added yet.
-     */
-    private boolean inPart = false;
-
     /*======================================================================
      * Constructors
      *----------------------------------------------------------------------
@@ -89,6 +116,22 @@ public abstract class Monitor
      */
     public abstract void println(String s);
 
+    /*======================================================================
+     * Accessors
+     *----------------------------------------------------------------------
+     */
+    /** @return true if messages from the calling thread are silenced */
+    public boolean isQuiet() { return this.callState.get().quiet; }
+
+    /**
+     * setQuiet
+     *
+     * silences (or unsilences) the messages logged by the calling thread.
+     * Entering and exiting methods is still tracked so the indentation is
+     * right when the messages resume.
+     */
+    public void setQuiet(boolean on) { this.callState.get().quiet = on; }
+
     /*======================================================================
      * Methods
      *----------------------------------------------------------------------
@@ -99,19 +142,21 @@ public abstract class Monitor
      * prints a partial log entry.  NOTE:  There is a lot of copy/paste here
      * from log().  I don't know how to avoid that
      */
-    public void logPart(String s)
+    public synchronized void logPart(String s)
     {
-        if (!inPart)
+        CallState state = this.callState.get();
+        if (state.quiet) return;
+        if (!state.inPart)
         {
-            s = padLeft(s, this.indent + this.tempIndent);
-            inPart = true;
+            s = padLeft(s, state.indent + state.tempIndent);
+            state.inPart = true;
         }
         this.print(s);
         
         //if there is a temporary indent in place, remove it now
-        if (this.tempIndent != 0)
+        if (state.tempIndent != 0)
         {
-            this.tempIndent = Math.max(0, tempIndent - INDENT_SIZE);
+            state.tempIndent = Math.max(0, state.tempIndent - INDENT_SIZE);
         }
     }
 
@@ -120,22 +165,24 @@ public abstract class Monitor
      *
      * @param s the message to log
      */
-   public void log(String s)
+   public synchronized void log(String s)
     {
-        if (!inPart)
+        CallState state = this.callState.get();
+        if (state.quiet) return;
+        if (!state.inPart)
         {
-            s = padLeft(s, this.indent + this.tempIndent);
+            s = padLeft(s, state.indent + state.tempIndent);
         }
         this.println(s);
 
         //if there is a temporary indent in place, remove it now
-        if (this.tempIndent != 0)
+        if (state.tempIndent != 0)
         {
-            this.tempIndent = Math.max(0, tempIndent - INDENT_SIZE);
+            state.tempIndent = Math.max(0, state.tempIndent - INDENT_SIZE);
         }
 
         //end any partial entry
-        inPart = false;
+        state.inPart = false;
     }//log
 
     /**
@@ -165,7 +212,7 @@ public abstract class Monitor
      */
     public void tab()
     {
-        this.tempIndent += INDENT_SIZE;
+        this.callState.get().tempIndent += INDENT_SIZE;
     }//tab
 
     /**
@@ -186,6 +233,8 @@ public abstract class Monitor
      */
    public void log(String s, Object... args)
     {
+        if (isQuiet()) return;
+
         //Construct the output message
         Formatter f = new Formatter();
         f.format(s, args);
@@ -241,8 +290,9 @@ public abstract class Monitor
     public void enter(String name)
     {
         log("Enter: " + name);
-        this.indent += INDENT_SIZE;
-        this.stack.add(name);
+        CallState state = this.callState.get();
+        state.indent += INDENT_SIZE;
+        state.stack.add(name);
     }//enter
 
     /**
@@ -254,11 +304,12 @@ public abstract class Monitor
      */
     public void exit(String name)
     {
-        //Find this method in the stack
+        //Find this method in this thread's stack
+        CallState state = this.callState.get();
         int pos = -1;
-        for(int i = this.stack.size() - 1; i >= 0; i--)
+        for(int i = state.stack.size() - 1; i >= 0; i--)
         {
-            String next = this.stack.elementAt(i);
+            String next = state.stack.elementAt(i);
             if (next.equalsIgnoreCase(name))
             {
                 pos = i;
@@ -269,11 +320,11 @@ public abstract class Monitor
         //if found, adjust indent and pop it off the stack
         if (pos >= 0)
         {
-            this.indent = Math.max(0, this.indent - (this.stack.size() - pos) * INDENT_SIZE);
+            state.indent = Math.max(0, state.indent - (state.stack.size() - pos) * INDENT_SIZE);
 
-            while(pos < this.stack.size())
+            while(pos < state.stack.size())
             {
-                this.stack.remove(pos);
+                state.stack.remove(pos);
             }
         }//if
         
@@ -287,7 +338,7 @@ public abstract class Monitor
      *
      * @param amt  amount of reward (currently unused)
      */
-    public void reward(double amt)
+    public synchronized void reward(double amt)
     {
         this.rewardCount++;
         log("REWARD #" + this.rewardCount);
@@ -302,6 +353,7 @@ public abstract class Monitor
      */
     public void log(Episode ep)
     {
+        if (isQuiet()) return;
         String output = "";
         
         if (env != null)
@@ -325,6 +377,7 @@ public abstract class Monitor
      */
     public void log(Action act)
     {
+        if (isQuiet()) return;
         String output = "";
         
         if (env != null)
@@ -348,6 +401,7 @@ public abstract class Monitor
      */
     public void log(Sequence seq)
     {
+        if (isQuiet()) return;
         String output = "";
         
         if (env != null)
@@ -371,6 +425,7 @@ public abstract class Monitor
      */
     public void log(Replacement repl)
     {
+        if (isQuiet()) return;
         String output = "";
         
         if (env != null)
@@ -394,6 +449,7 @@ public abstract class Monitor
      */
     public void log(Route route)
     {
+        if (isQuiet()) return;
         String output = "";
         
         if (env != null)
@@ -417,6 +473,7 @@ public abstract class Monitor
      */
     public void log(Plan plan)
     {
+        if (isQuiet()) return;
         String output = "";
         
         if (env != null)
@@ -445,6 +502,7 @@ public abstract class Monitor
      */
     public void log(Vector vec) 
     {
+        if (isQuiet()) return;
         log("{");
         int count = 0;
         for(Object obj : vec)
@@ -0,0 +1,211 @@
+package Ziggurat;
+
+import java.util.*;
+
+/**
+ * <!-- class NoveltyFilter -->
+ *
+ * A NoveltyFilter is a Bloom filter over the agent's level 0 history.  It
+ * records each (sensors, command) pair that the agent has experienced along
+ * with the short runs of episodes (n-grams) that end with that pair.  Like
+ * any Bloom filter it can say for certain that something has never been seen
+ * but it can only say that something has <i>probably</i> been seen.
+ *
+ * <p>This is enough to bound the result of {@link Ziggurat#calcUniqueness}:
+ * if a command has never been taken in the current sensor state its
+ * uniqueness is zero, and if the agent has never taken it after the most
+ * recent n-1 episodes its uniqueness is less than n.
+ *
+ * <p>Sensors are identified by their ids in a {@link SymbolTable}.  The
+ * episodes that precede a pair are identified by their episode ids.
+ */
+public class NoveltyFilter
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+    /** the default number of bits in the filter (128KB) */
+    public static final int DEFAULT_NUM_BITS = 1 << 20;
+    /** the default number of hash functions */
+    public static final int DEFAULT_NUM_HASHES = 3;
+    /** the default length of the longest n-gram that is recorded */
+    public static final int DEFAULT_MAX_GRAM = 4;
+    /** no upper bound could be found (see {@link #getUpperBound}) */
+    public static final int NO_BOUND = Integer.MAX_VALUE;
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    /** the filter's bits */
+    protected long[] bits;
+    /** the number of bits in the filter */
+    protected int numBits;
+    /** the number of bits set for each item */
+    protected int numHashes;
+    /** the length of the longest n-gram that is recorded */
+    protected int maxGram;
+    /** the ids of the most recent episodes (the newest is at recentPos) */
+    protected int[] recent;
+    /** position of the newest episode in {@link #recent} */
+    protected int recentPos = 0;
+    /** the number of episodes added so far */
+    protected int size = 0;
+
+    /*======================================================================
+     * Constructors
+     *----------------------------------------------------------------------
+     */
+    /**
+     * creates an empty filter
+     *
+     * @param numBits    the size of the filter in bits (at least 64)
+     * @param numHashes  the number of bits to set for each item (at least 1)
+     * @param maxGram    the length of the longest n-gram to record (at
+     *                   least 1)
+     */
+    public NoveltyFilter(int numBits, int numHashes, int maxGram)
+    {
+        this.numBits = Math.max(64, numBits);
+        this.bits = new long[(this.numBits + 63) / 64];
+        this.numHashes = Math.max(1, numHashes);
+        this.maxGram = Math.max(1, maxGram);
+        this.recent = new int[this.maxGram];
+    }//ctor
+
+    /** creates an empty filter with the default settings */
+    public NoveltyFilter()
+    {
+        this(DEFAULT_NUM_BITS, DEFAULT_NUM_HASHES, DEFAULT_MAX_GRAM);
+    }//ctor
+
+    /*======================================================================
+     * Accessors
+     *----------------------------------------------------------------------
+     */
+    /** @return the number of bits in the filter */
+    public int getNumBits() { return this.numBits; }
+
+    /** @return the length of the longest n-gram that is recorded */
+    public int getMaxGram() { return this.maxGram; }
+
+    /** @return the number of episodes that have been added */
+    public int size() { return this.size; }
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+    /** @return the id of the episode that was added a given number of
+     *          episodes before the newest one (0 is the newest). */
+    protected int getRecent(int back)
+    {
+        int pos = (this.recentPos - back + this.recent.length) % this.recent.length;
+        return this.recent[pos];
+    }//getRecent
+
+    /** mixes a value into a 64-bit hash (the finalizer from SplitMix64) */
+    protected static long mix(long hash, long value)
+    {
+        long z = hash + value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }//mix
+
+    /** @return the hash of the n-gram that ends with the given pair and is
+     *          preceded by the n-1 most recent episodes */
+    protected long gramHash(int sensorId, int cmd, int n)
+    {
+        long hash = mix(mix(n, sensorId), cmd);
+        for(int back = 0; back < n - 1; back++)
+        {
+            hash = mix(hash, getRecent(back));
+        }
+        return hash;
+    }//gramHash
+
+    /** sets the bits for the given hash */
+    protected void set(long hash)
+    {
+        int h1 = (int)hash;
+        int h2 = (int)(hash >>> 32) | 1;
+        for(int i = 0; i < this.numHashes; i++)
+        {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % this.numBits;
+            this.bits[bit >>> 6] |= 1L << bit;
+        }
+    }//set
+
+    /** @return false if the given hash has definitely not been set */
+    protected boolean test(long hash)
+    {
+        int h1 = (int)hash;
+        int h2 = (int)(hash >>> 32) | 1;
+        for(int i = 0; i < this.numHashes; i++)
+        {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % this.numBits;
+            if ((this.bits[bit >>> 6] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }//test
+
+    /**
+     * add
+     *
+     * adds the next episode in the history.  The episode's command must be
+     * final.
+     *
+     * @param episodeId  the id of the episode
+     * @param sensorId   the id of the episode's sensors
+     * @param cmd        the episode's command
+     */
+    public void add(int episodeId, int sensorId, int cmd)
+    {
+        int maxN = Math.min(this.maxGram, this.size + 1);
+        for(int n = 1; n <= maxN; n++)
+        {
+            set(gramHash(sensorId, cmd, n));
+        }
+
+        //This episode is now the newest
+        this.recentPos = (this.recentPos + 1) % this.recent.length;
+        this.recent[this.recentPos] = episodeId;
+        this.size++;
+    }//add
+
+    /**
+     * mightContain
+     *
+     * @return false if the given command has definitely never been taken in
+     *         the given sensor state
+     */
+    public boolean mightContain(int sensorId, int cmd)
+    {
+        return test(gramHash(sensorId, cmd, 1));
+    }//mightContain
+
+    /**
+     * getUpperBound
+     *
+     * calculates an upper bound on how many of the most recent episodes would
+     * have to be included to make taking a command in the given sensor state
+     * part of a series of episodes that has not been seen before.  (See
+     * {@link Ziggurat#calcUniqueness}.)
+     *
+     * @return the bound or {@link #NO_BOUND} if the filter can't rule out
+     *         any length
+     */
+    public int getUpperBound(int sensorId, int cmd)
+    {
+        int maxN = Math.min(this.maxGram, this.size + 1);
+        for(int n = 1; n <= maxN; n++)
+        {
+            if (! test(gramHash(sensorId, cmd, n))) return n - 1;
+        }
+
+        return NO_BOUND;
+    }//getUpperBound
+
+}//class NoveltyFilter
@@ -113,6 +113,18 @@ public class Plan
         return count;
     }//numRepls
 
+    /** @return the active replacements on every route in this plan */
+    public Vector<Replacement> getRepls()
+    {
+        Vector<Replacement> result = new Vector<Replacement>();
+        for(Route r : this.routes)
+        {
+            result.addAll(r.getRepls());
+        }
+
+        return result;
+    }//getRepls
+
     /** @return the route at a given level */
     public Route getRoute(int level)
     {
@@ -279,6 +291,54 @@ public class Plan
         return newRoute.getCurrAction();
 	}//advance
 
+    /**
+     * rejoin
+     *
+     * puts this plan back on track after the agent has strayed from it.  The
+     * route at a given level is moved ahead to a given action and each route
+     * below it is rebuilt from its parent as {@link #advance} would.  (The
+     * routes above it are unchanged since they are still on the same action.)
+     * Then a given series of level 0 actions that leads from the agent's
+     * current state to the new level 0 route is spliced onto its front.
+     *
+     * @param level   the level of the route to move ahead
+     * @param index   the index of the action to move to in that route
+     * @param bridge  the level 0 actions that lead to the rejoined route.  This
+     *                may be empty.
+     *
+     * @return true if the plan was rejoined
+     */
+    public boolean rejoin(int level, int index, Vector<Action> bridge)
+    {
+        if ((this.routes.size() <= level) || (this.needsRecalc))
+        {
+            return false;
+        }
+
+        //Move ahead at the given level
+        if (this.routes.elementAt(level).rejoin(index) == null) return false;
+
+        //Rebuild each route below it and reapply its replacements
+        for(int i = level - 1; i >= 0; i--)
+        {
+            Route oldRoute = this.routes.elementAt(i);
+            Route newRoute = new Route(this.routes.elementAt(i+1).getCurrAction());
+            for(Replacement repl : oldRoute.getRepls())
+            {
+                newRoute.applyReplacement(repl);
+            }
+            this.setRoute(i, newRoute);
+        }//for
+
+        //Lead into the level 0 route with the bridge
+        if (bridge.size() > 0)
+        {
+            this.setRoute(0, this.routes.elementAt(0).splice(bridge));
+        }
+
+        return true;
+    }//rejoin
+
     /**
      * applies the given replacement to the appropriate level of this plan 
      */
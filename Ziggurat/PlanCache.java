@@ -0,0 +1,162 @@
+package Ziggurat;
+
+import java.util.*;
+
+/**
+ * <!-- class PlanCache -->
+ *
+ * A PlanCache remembers the route that {@link Ziggurat#findRoute} found from
+ * each starting sequence so that the agent doesn't repeat the same search
+ * every time it finds itself in the same place.  It holds a limited number of
+ * routes and forgets the least recently used one first.
+ *
+ * <p>Each route is stamped with the generation of the level's {@link
+ * ActionGraph} when it was found.  Once a sequence or action is added to the
+ * graph a shorter route may exist so the stamped route is no longer used.
+ *
+ * <p>Only the sequences that were added to the seed route are kept.  The
+ * caller rebuilds the route from its own seed since the seed's current action
+ * may differ from one call to the next.
+ */
+public class PlanCache
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+    /** the default number of routes that are kept */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /*======================================================================
+     * Inner Classes
+     *----------------------------------------------------------------------
+     */
+    /**
+     * class Entry
+     *
+     * the route found from a single starting sequence
+     */
+    public static class Entry
+    {
+        /** the generation of the level's graph when the route was found */
+        public int generation;
+        /** the sequences after the starting one (null if there is no route) */
+        public Vector<Sequence> seqs;
+
+        public Entry(int generation, Vector<Sequence> seqs)
+        {
+            this.generation = generation;
+            this.seqs = seqs;
+        }
+    }//class Entry
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    /** the cached routes indexed by level and starting sequence id (see
+     * {@link #makeKey}) in order of use */
+    protected LinkedHashMap<Long,Entry> entries;
+    /** the most routes that are kept */
+    protected int capacity;
+    /** the number of lookups that found a valid route */
+    protected long hits = 0;
+    /** the number of lookups that didn't */
+    protected long misses = 0;
+
+    /*======================================================================
+     * Constructors
+     *----------------------------------------------------------------------
+     */
+    /** creates an empty cache that holds at most a given number of routes */
+    public PlanCache(int capacity)
+    {
+        this.capacity = Math.max(1, capacity);
+        this.entries = new LinkedHashMap<Long,Entry>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<Long,Entry> eldest)
+                {
+                    return size() > PlanCache.this.capacity;
+                }
+            };
+    }//ctor
+
+    /*======================================================================
+     * Accessors
+     *----------------------------------------------------------------------
+     */
+    /** @return the most routes that are kept */
+    public int getCapacity() { return this.capacity; }
+
+    /** @return the number of routes that are kept now */
+    public int size() { return this.entries.size(); }
+
+    /** @return the number of lookups that found a valid route */
+    public long getHits() { return this.hits; }
+
+    /** @return the number of lookups that didn't find a valid route */
+    public long getMisses() { return this.misses; }
+
+    /** @return the fraction of lookups that found a valid route */
+    public double getHitRate()
+    {
+        long total = this.hits + this.misses;
+        return (total == 0) ? 0.0 : (double)this.hits / total;
+    }
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+    /** @return the key for a given level and starting sequence */
+    protected static long makeKey(int level, int seqId)
+    {
+        return ((long)level << 32) | (seqId & 0xFFFFFFFFL);
+    }//makeKey
+
+    /**
+     * get
+     *
+     * looks up the route from a given sequence.  A route found in an older
+     * generation of the graph is discarded.
+     *
+     * @param level       the level of the sequence
+     * @param seqId       the id of the sequence
+     * @param generation  the current generation of the level's graph
+     *
+     * @return the entry for the route or null if there is no valid entry
+     */
+    public Entry get(int level, int seqId, int generation)
+    {
+        long key = makeKey(level, seqId);
+        Entry entry = this.entries.get(key);
+        if ((entry != null) && (entry.generation != generation))
+        {
+            this.entries.remove(key);
+            entry = null;
+        }
+
+        if (entry == null) this.misses++;
+        else this.hits++;
+        return entry;
+    }//get
+
+    /**
+     * put
+     *
+     * records the route found from a given sequence
+     *
+     * @param level       the level of the sequence
+     * @param seqId       the id of the sequence
+     * @param generation  the current generation of the level's graph
+     * @param seqs        the sequences after the starting one (null if there
+     *                    is no route)
+     */
+    public void put(int level, int seqId, int generation, Vector<Sequence> seqs)
+    {
+        this.entries.put(makeKey(level, seqId), new Entry(generation, seqs));
+    }//put
+
+    /** forgets every route */
+    public void clear() { this.entries.clear(); }
+
+}//class PlanCache
@@ -0,0 +1,74 @@
+package Ziggurat;
+
+import java.util.*;
+
+/**
+ * <!-- class PositionMap -->
+ *
+ * A PositionMap records where each episode at one level of the hierarchy
+ * appears in the level above it.  For each position (index) at the lower level
+ * it stores the index of the episode at the upper level that contains it and
+ * the offset of the position within that episode's sequence.
+ *
+ * <p>Ziggurat fills this in as each level 0 sequence is promoted to level 1
+ * so that {@link Ziggurat#findElementalOrientation} can translate a level 0
+ * position directly instead of re-deriving it from the level 1 episodes.
+ */
+public class PositionMap
+{
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    /** the upper level episode that contains each lower level position */
+    protected int[] parentIndex = new int[SuffixAutomaton.INIT_CAPACITY];
+    /** the offset of each lower level position in its parent's sequence */
+    protected int[] offset = new int[SuffixAutomaton.INIT_CAPACITY];
+    /** the number of positions mapped so far */
+    protected int size = 0;
+
+    /*======================================================================
+     * Accessors
+     *----------------------------------------------------------------------
+     */
+    /** @return the number of positions that have been mapped */
+    public int size() { return this.size; }
+
+    /** @return the index of the upper level episode that contains the given
+     *          position */
+    public int getParentIndex(int pos) { return this.parentIndex[pos]; }
+
+    /** @return the offset of the given position in its parent's sequence */
+    public int getOffset(int pos) { return this.offset[pos]; }
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+    /**
+     * add
+     *
+     * maps the next several positions to a new upper level episode
+     *
+     * @param parent  the index of the upper level episode
+     * @param length  the number of lower level positions it contains
+     */
+    public void add(int parent, int length)
+    {
+        //Grow the arrays if needed
+        if (this.size + length > this.parentIndex.length)
+        {
+            int newCap = Math.max(this.parentIndex.length * 2, this.size + length);
+            this.parentIndex = Arrays.copyOf(this.parentIndex, newCap);
+            this.offset = Arrays.copyOf(this.offset, newCap);
+        }
+
+        for(int i = 0; i < length; i++)
+        {
+            this.parentIndex[this.size] = parent;
+            this.offset[this.size] = i;
+            this.size++;
+        }
+    }//add
+
+}//class PositionMap
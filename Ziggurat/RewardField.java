@@ -0,0 +1,213 @@
+package Ziggurat;
+
+import java.util.*;
+
+/**
+ * <!-- class RewardField -->
+ *
+ * A RewardField records, for every sequence in an {@link ActionGraph}, the
+ * length of the shortest route from that sequence to a sequence that contains
+ * a reward and the first step of that route.  With it {@link
+ * Ziggurat#findRoute} can build a route by simply following the first steps
+ * and can tell immediately whether any reward is reachable at all.
+ *
+ * <p>Lengths are measured the same way {@link RouteNode#numElementalEpisodes}
+ * measures a route (not counting the sequences before the one in question):
+ * the elemental episodes in every later sequence plus those in the RHS of the
+ * final action.  Like the planner, a route stops at the first sequence that
+ * contains a reward.
+ *
+ * <p>Sequences and actions are only ever added to the graph so lengths only
+ * ever shrink.  Each change is repaired by a backward Dijkstra search from
+ * the sequences whose length shrank.  To keep each update cheap, only a
+ * limited number of sequences are repaired at a time and the rest are
+ * finished the next time the field is used (see {@link #settle}).
+ *
+ * <p>Since the field is measured from the rewards rather than from where the
+ * agent is, it stays valid as the agent moves.  When an action turns out
+ * differently than expected the new action is just another edge, so
+ * replanning only costs as much as the sequences whose lengths it changes
+ * (see {@link #getNumRepaired}).
+ */
+public class RewardField
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+    /** the length of a sequence that can't reach a reward */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+    /** default number of sequences repaired per change */
+    public static final int DEFAULT_REPAIR_BUDGET = 32;
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    /** the graph this field is for */
+    protected ActionGraph graph;
+    /** the length of the shortest route from each node to a reward */
+    protected int[] dist = new int[ActionGraph.INIT_CAPACITY];
+    /** the edge out of each node that begins its shortest route (-1 if
+     * none) */
+    protected int[] nextEdge = new int[ActionGraph.INIT_CAPACITY];
+    /** nodes whose length shrank but haven't been repaired yet.  Each entry
+     * packs the length with the node so the shortest is repaired first. */
+    protected PriorityQueue<Long> pending = new PriorityQueue<Long>();
+    /** the most nodes repaired per change (zero for unlimited) */
+    protected int repairBudget = DEFAULT_REPAIR_BUDGET;
+    /** the number of nodes repaired so far */
+    protected long numRepaired = 0;
+
+    /*======================================================================
+     * Constructors
+     *----------------------------------------------------------------------
+     */
+    /** creates an empty field for a given (empty) graph */
+    public RewardField(ActionGraph graph)
+    {
+        this.graph = graph;
+    }//ctor
+
+    /*======================================================================
+     * Accessors
+     *----------------------------------------------------------------------
+     */
+    /** set the most nodes repaired per change (zero for unlimited) */
+    public void setRepairBudget(int budget) { this.repairBudget = budget; }
+
+    /** @return the number of nodes repaired so far */
+    public long getNumRepaired() { return this.numRepaired; }
+
+    /** @return true if there are no unfinished repairs */
+    public boolean isSettled() { return this.pending.isEmpty(); }
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+    /**
+     * getDistance
+     *
+     * @return the length of the shortest route from a given node to a reward
+     *         (or {@link #UNREACHABLE}).  The field must be settled for this
+     *         to be exact.
+     */
+    public int getDistance(int node) { return this.dist[node]; }
+
+    /**
+     * getNextEdge
+     *
+     * @return the edge out of a given node that begins its shortest route to
+     *         a reward or -1 if the node contains a reward or can't reach one
+     */
+    public int getNextEdge(int node) { return this.nextEdge[node]; }
+
+    /** @return true if a given node can reach a reward */
+    public boolean isReachable(int node)
+    {
+        settle();
+        return this.dist[node] != UNREACHABLE;
+    }//isReachable
+
+    /**
+     * finalLength
+     *
+     * @return the elemental episodes in the RHS of the last action of a given
+     *         node's sequence.  (This is the part of a route's length that
+     *         depends on where it ends.)
+     */
+    protected int finalLength(int node)
+    {
+        Sequence seq = this.graph.getSequence(node);
+        if ((this.graph.getLevel() == 0) || (seq.length() == 0)) return 0;
+        return Route.numElementalEpisodes(seq.lastAction().getRHS());
+    }//finalLength
+
+    /** records a new (shorter) length for a node and queues its repair */
+    protected void lower(int node, int newDist, int edge)
+    {
+        this.dist[node] = newDist;
+        this.nextEdge[node] = edge;
+        this.pending.add(((long)newDist << 32) | node);
+    }//lower
+
+    /**
+     * nodeAdded
+     *
+     * is called by the graph when a node is added
+     */
+    public void nodeAdded(int node)
+    {
+        //Grow the arrays if needed
+        if (node >= this.dist.length)
+        {
+            int newCap = Math.max(this.dist.length * 2, node + 1);
+            this.dist = Arrays.copyOf(this.dist, newCap);
+            this.nextEdge = Arrays.copyOf(this.nextEdge, newCap);
+        }
+
+        this.dist[node] = UNREACHABLE;
+        this.nextEdge[node] = -1;
+        if (this.graph.getSequence(node).containsReward())
+        {
+            lower(node, finalLength(node), -1);
+            repair(this.repairBudget);
+        }
+    }//nodeAdded
+
+    /**
+     * edgeAdded
+     *
+     * is called by the graph when an edge is added
+     */
+    public void edgeAdded(int from, int edge)
+    {
+        relax(from, edge);
+        repair(this.repairBudget);
+    }//edgeAdded
+
+    /** shortens the length of a node via one of its edges if possible */
+    protected void relax(int from, int edge)
+    {
+        //Routes stop at the first reward so they never pass through one
+        if (this.graph.getSequence(from).containsReward()) return;
+
+        int to = this.graph.getTarget(from, edge);
+        if (this.dist[to] == UNREACHABLE) return;
+        int newDist = this.graph.getWeight(from, edge) + this.dist[to];
+        if (newDist < this.dist[from]) lower(from, newDist, edge);
+    }//relax
+
+    /**
+     * repair
+     *
+     * propagates shortened lengths backward through the graph
+     *
+     * @param budget  the most nodes to repair (zero for unlimited)
+     */
+    public void repair(int budget)
+    {
+        int count = 0;
+        while(! this.pending.isEmpty())
+        {
+            if ((budget > 0) && (count >= budget)) break;
+
+            //Skip entries that have been superseded
+            long entry = this.pending.poll();
+            int node = (int)entry;
+            if ((int)(entry >>> 32) != this.dist[node]) continue;
+            count++;
+            this.numRepaired++;
+
+            for(int i = 0; i < this.graph.numSources(node); i++)
+            {
+                relax(this.graph.getSource(node, i), this.graph.getSourceEdge(node, i));
+            }
+        }//while
+    }//repair
+
+    /** finishes any repairs that are pending */
+    public void settle() { repair(0); }
+
+}//class RewardField
@@ -62,6 +62,11 @@ public class Route extends Sequence
      */
     protected Vector<Sequence> seqs = new Vector<Sequence>();
 
+    /** a running total of the elemental episodes in the LHS of every action in
+     * this route.  This is maintained as sequences are added so that {@link
+     * #numElementalEpisodes} is inexpensive. */
+    protected int lhsElEps = 0;
+
     /*======================================================================
      * Constructors
      *----------------------------------------------------------------------
@@ -198,6 +203,7 @@ public class Route extends Sequence
         for(Action act : seq.actions)
         {
             this.actions.add(act);
+            this.lhsElEps += numElementalEpisodes(act.getLHS());
         }
             
         this.seqs.add(seq);
@@ -248,6 +254,49 @@ public class Route extends Sequence
         return null;
 	}//advance
 
+    /**
+     * rejoin
+     *
+     * moves this route ahead to a given action (e.g., after the agent has
+     * found its way back to a later step of its plan)
+     *
+     * @param index  the index of the new current action.  It may not be before
+     *               the current action.
+     *
+     * @return the new current action or null if the index is invalid
+     */
+    public Action rejoin(int index)
+    {
+        if ((index < this.currActIndex) || (index >= this.actions.size()))
+        {
+            return null;
+        }
+
+        this.currActIndex = index;
+        return this.getCurrAction();
+    }//rejoin
+
+    /**
+     * splice
+     *
+     * creates a route that takes a given series of actions and then follows
+     * the rest of this route.  The replacements that have been applied to this
+     * route are carried over.
+     *
+     * @param bridge  the actions to take first
+     *
+     * @return the new route
+     */
+    public Route splice(Vector<Action> bridge)
+    {
+        Vector<Action> acts = new Vector<Action>(bridge);
+        acts.addAll(this.actions.subList(this.currActIndex, this.actions.size()));
+
+        Route result = new Route(new Sequence(acts));
+        result.repls.addAll(this.repls);
+        return result;
+    }//splice
+
     /**
      * @return a reference to the current action in the current sequence or null
      *         if there is none
@@ -269,17 +318,25 @@ public class Route extends Sequence
         Sequence replSeq = repl.apply(this, this.currActIndex);
         this.actions = replSeq.actions;
 
+        //The actions have changed so the running total must be recalculated
+        this.lhsElEps = 0;
+        for(Action act : this.actions)
+        {
+            this.lhsElEps += numElementalEpisodes(act.getLHS());
+        }
+
         //Log that this Replacement has ben applied
         this.repls.add(repl);
 
 	}//applyReplacement
 
     /**
-     * numElementalEpisodes         <!-- RECURSIVE -->
+     * numElementalEpisodes
      *
-     * counts the total number of elemental episodes in this route.
-     *
-     * <p><b>Note</b>: This method is somewhat expensive.
+     * counts the total number of elemental episodes in this route.  The
+     * episodes in the LHS of each action are tracked as sequences are added
+     * (see {@link #lhsElEps}) so only the RHS of the last action must be
+     * counted here.
      */
 	public int numElementalEpisodes() 
     {
@@ -289,22 +346,31 @@ public class Route extends Sequence
             return this.actions.size();
         }
 
-        //Count the episodes in each SequenceEpisode's inherent sequence
-        int count = 0;
-        for(Action act : this.actions)
-        {
-            SequenceEpisode seqEp = (SequenceEpisode)act.getLHS();
-            count += seqEp.getSequence().numElementalEpisodes();  //recurse
-        }
-
         //add the ElementalEpisodes in the RHS of the last action
+        int count = this.lhsElEps;
         Action act = this.lastAction();
-        SequenceEpisode seqEp = (SequenceEpisode)act.getRHS();
-        count += seqEp.getSequence().numElementalEpisodes(); // recurse
+        if (act != null)
+        {
+            count += numElementalEpisodes(act.getRHS());
+        }
         
 		return count;
 	}//numElementalEpisodes
 
+    /**
+     * @return the number of elemental episodes in a given episode: one for an
+     *         ElementalEpisode or the length of a SequenceEpisode's sequence
+     */
+    protected static int numElementalEpisodes(Episode ep)
+    {
+        if (ep instanceof SequenceEpisode)
+        {
+            return ((SequenceEpisode)ep).numElementalEpisodes();
+        }
+
+        return 1;
+    }//numElementalEpisodes
+
     /**
      * @return the level of the actions in this route
      */
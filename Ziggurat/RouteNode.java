@@ -0,0 +1,187 @@
+package Ziggurat;
+
+import java.util.*;
+
+/**
+ * <!-- class RouteNode -->
+ *
+ * A RouteNode is an immutable, persistent representation of a candidate
+ * {@link Route} that is used by {@link Ziggurat#findRoute}.  Each node records
+ * only the last sequence of its route and a pointer to the node for the rest
+ * of the route.  The first node in every chain wraps the seed route that the
+ * search started from.
+ *
+ * <p>Since nodes are never modified, any number of candidates can share a
+ * common prefix.  Extending a candidate with a new sequence takes constant
+ * time and memory, where cloning a Route copies every action, episode and
+ * sensor in it.  A full Route is only built (see {@link #toRoute}) for the
+ * candidate that the planner selects.
+ *
+ * <p>Each node caches the values that the planner asks for repeatedly: the
+ * number of elemental episodes in the route and a small bit filter of the ids
+ * of the sequences in the route that allows {@link #contains} to usually
+ * answer "no" without walking the chain.
+ *
+ * @see Route
+ */
+public class RouteNode
+{
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    /** the node for the route without its last sequence (null for the seed) */
+    protected RouteNode parent;
+    /** the seed route that this chain begins with */
+    protected Route seed;
+    /** the sequence this node adds to its parent's route (null for the seed) */
+    protected Sequence seq;
+    /** the level of the route */
+    protected int level;
+    /** elemental episodes in the LHS of every action in the route (see {@link
+     * Route#lhsElEps}) */
+    protected int lhsElEps;
+    /** the last action in the route */
+    protected Action lastAct;
+    /** a bit filter over the ids of the sequences added since the seed.  If
+     * a sequence's bits are not all set it's definitely not in the chain. */
+    protected long filter;
+
+    /*======================================================================
+     * Constructors
+     *----------------------------------------------------------------------
+     */
+    /** creates the first node of a chain from a given seed route */
+    public RouteNode(Route seed)
+    {
+        this.parent = null;
+        this.seed = seed;
+        this.seq = null;
+        this.level = seed.getLevel();
+        this.lhsElEps = seed.lhsElEps;
+        this.lastAct = seed.lastAction();
+        this.filter = 0L;
+    }//ctor
+
+    /** creates a node that extends a given node with a given sequence */
+    protected RouteNode(RouteNode parent, Sequence seq)
+    {
+        this.parent = parent;
+        this.seed = parent.seed;
+        this.seq = seq;
+        this.level = parent.level;
+        this.lhsElEps = parent.lhsElEps + seq.numElementalEpisodes();
+        this.lastAct = (seq.length() > 0) ? seq.lastAction() : parent.lastAct;
+        this.filter = parent.filter | filterBits(seq);
+    }//ctor
+
+    /*======================================================================
+     * Accessors
+     *----------------------------------------------------------------------
+     */
+    public RouteNode getParent() { return this.parent; }
+    public int getLevel() { return this.level; }
+
+    /** @return the last sequence in this route */
+    public Sequence getLastSeq()
+    {
+        if (this.seq == null) return this.seed.getLastSeq();
+        return this.seq;
+    }
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+    /** @return the bits that represent a given sequence in {@link #filter} */
+    protected static long filterBits(Sequence seq)
+    {
+        long hash = seq.getID() * 0x9E3779B97F4A7C15L;
+        return (1L << (hash >>> 58)) | (1L << ((hash >>> 52) & 63));
+    }//filterBits
+
+    /**
+     * extend
+     *
+     * @return a new node for this route with the given sequence appended.
+     *         This node is not modified.
+     */
+    public RouteNode extend(Sequence seq)
+    {
+        return new RouteNode(this, seq);
+    }//extend
+
+    /**
+     * numElementalEpisodes
+     *
+     * counts the total number of elemental episodes in this route.  This is
+     * the same value that {@link Route#numElementalEpisodes} would report for
+     * the materialized route.
+     */
+    public int numElementalEpisodes()
+    {
+        if ((this.level == 0) || (this.lastAct == null)) return this.lhsElEps;
+
+        return this.lhsElEps + Route.numElementalEpisodes(this.lastAct.getRHS());
+    }//numElementalEpisodes
+
+    /**
+     * contains
+     *
+     * @return true if the given sequence is in this route
+     */
+    public boolean contains(Sequence seq)
+    {
+        //The sequences added by the planner are canonical so they can be
+        //compared by reference once the filter has been checked
+        long bits = filterBits(seq);
+        if ((this.filter & bits) == bits)
+        {
+            for(RouteNode node = this; node.seq != null; node = node.parent)
+            {
+                if (node.seq == seq) return true;
+            }
+        }
+
+        return this.seed.contains(seq);
+    }//contains
+
+    /**
+     * toRoute
+     *
+     * materializes this node as a full Route: a copy of the seed followed by
+     * each sequence in the chain.
+     *
+     * @return the new Route (or the seed itself if nothing has been added)
+     */
+    public Route toRoute()
+    {
+        if (this.seq == null) return this.seed;
+
+        Route result = this.seed.clone();
+        for(Sequence s : getChain())
+        {
+            result.add(s);
+        }
+
+        return result;
+    }//toRoute
+
+    /**
+     * getChain
+     *
+     * @return the sequences added to the seed route in route order
+     */
+    public Vector<Sequence> getChain()
+    {
+        Vector<Sequence> chain = new Vector<Sequence>();
+        for(RouteNode node = this; node.seq != null; node = node.parent)
+        {
+            chain.add(node.seq);
+        }
+        Collections.reverse(chain);
+
+        return chain;
+    }//getChain
+
+}//class RouteNode
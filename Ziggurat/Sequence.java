@@ -1,6 +1,7 @@
 package Ziggurat;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -20,8 +21,9 @@ public class Sequence extends DecisionElement
     /** used for {@link #toString} */
     public static NullEnvironment nullEnv = new NullEnvironment();
 
-    /** used to generate a unique id for each sequence */
-    protected static int nextID = 0;
+    /** used to generate a unique id for each sequence.  Sequences may be
+     * created by more than one thread (see {@link Ziggurat#setAsyncUpdates}) */
+    protected static AtomicInteger nextID = new AtomicInteger(0);
 
     /*======================================================================
      * Instance Variables
@@ -33,6 +35,20 @@ public class Sequence extends DecisionElement
     /** these are the actions that comprise the sequence (order matters) */
     protected Vector<Action> actions;
 
+    /** once a sequence is complete it may no longer be modified.  This allows
+     * the values below to be calculated just once (see {@link
+     * #makeImmutable}). */
+    protected boolean immutable = false;
+    /** cached result of {@link #numElementalEpisodes} (immutable only) */
+    protected int numElEps = 0;
+    /** cached index of the first action that yields a reward or -1 if none
+     * (immutable only) */
+    protected int rewardPos = -1;
+
+    /** the first episode at the next level up that contains this sequence (or
+     * null if there isn't one yet).  See {@link Ziggurat#findContainingEpisode} */
+    protected SequenceEpisode containingEp = null;
+
     /*======================================================================
      * Constructors
      *----------------------------------------------------------------------
@@ -41,7 +57,7 @@ public class Sequence extends DecisionElement
     public Sequence()
     {
     	actions = new Vector<Action>();
-        id = nextID++;
+        id = nextID.getAndIncrement();
     }
 
     /** this ctor inits the new Sequence with the given actions */
@@ -55,18 +71,22 @@ public class Sequence extends DecisionElement
             this.level = acts.elementAt(0).getLevel();
         }
 
-        id = nextID++;
+        id = nextID.getAndIncrement();
     }
     
     /*======================================================================
      * Accessors
      *----------------------------------------------------------------------
      */
+    public int getID() { return this.id; }
     public Vector<Action> getActions() { return this.actions; }
     public Action getActionAtIndex(int i) { return (this.actions.size() > i ? this.actions.elementAt(i) : null); }
     public Action firstAction() { return getActionAtIndex(0); }
     public Action lastAction() { return getActionAtIndex(this.actions.size() - 1); }
     public int length() { return this.actions.size(); }
+    public boolean isImmutable() { return this.immutable; }
+    public SequenceEpisode getContainingEpisode() { return this.containingEp; }
+    public void setContainingEpisode(SequenceEpisode ep) { this.containingEp = ep; }
     
     /*======================================================================
      * Methods
@@ -105,7 +125,8 @@ public class Sequence extends DecisionElement
     /**
      * clone
      *
-     * creates a deep copy of this sequence
+     * creates a deep copy of this sequence.  The copy is never immutable
+     * (even if this sequence is) since callers often modify it.
      * 
      * @return a duplicate of this sequence with a reset utility
      *
@@ -141,6 +162,13 @@ public class Sequence extends DecisionElement
     /** appends a given action to the end of the sequence */
     public void add(Action act) 
     {
+        if (this.immutable)
+        {
+            System.err.println("ABORT!  Tried to add an action to an immutable sequence.");
+            Thread.dumpStack();
+            System.exit(-2);
+        }
+        
         actions.add(act);
 
         //If this is the first action added to the sequence, then inherit its
@@ -151,6 +179,24 @@ public class Sequence extends DecisionElement
         }
     }//add
 
+    /**
+     * makeImmutable
+     *
+     * is called once a sequence is complete (see {@link Ziggurat#update}).
+     * From then on the sequence may not be modified so its elemental length
+     * and reward position are calculated here once and cached.  Since the
+     * constituent sequences one level down were completed first, this is
+     * inexpensive.
+     */
+    public void makeImmutable()
+    {
+        if (this.immutable) return;
+
+        this.numElEps = numElementalEpisodes();
+        this.rewardPos = getRewardPos();
+        this.immutable = true;
+    }//makeImmutable
+
     /**
      * numElementalEpisodes          *RECURSIVE*
      *
@@ -158,10 +204,12 @@ public class Sequence extends DecisionElement
      *
      * @return the total number of elemental episdoes in this sequence
      *
-     * CAVEAT:  This method is expensive.  Use only when necessary.
+     * CAVEAT:  This method is expensive unless the sequence is immutable.
      */
     public int numElementalEpisodes() 
     {
+        if (this.immutable) return this.numElEps;
+        
         int count = 0;
         //Extract the episodes from each action in the sequence
         for(Action a : actions)
@@ -212,18 +260,31 @@ public class Sequence extends DecisionElement
     }//findEquivalent
 
     /**
-     * containsReward
+     * getRewardPos
      *
-     * @return true if one of its constituent episodes contains a reward
+     * @return the index of the first action that yields a reward or -1 if
+     *         there is none
      */
-    public boolean containsReward()
+    public int getRewardPos()
     {
-        for(Action act : this.actions)
+        if (this.immutable) return this.rewardPos;
+
+        for(int i = 0; i < this.actions.size(); i++)
         {
-            if (act.containsReward()) return true;
+            if (this.actions.elementAt(i).containsReward()) return i;
         }
 
-        return false;
+        return -1;
+    }//getRewardPos
+
+    /**
+     * containsReward
+     *
+     * @return true if one of its constituent episodes contains a reward
+     */
+    public boolean containsReward()
+    {
+        return (getRewardPos() != -1);
     }
                 
     
@@ -87,6 +87,16 @@ public class SequenceEpisode extends Episode
         return rtn;
     }//clone
 
+    /**
+     * @return the number of elemental episodes this episode spans.  This is
+     * inexpensive for episodes created by {@link Ziggurat#update} since their
+     * sequences are immutable.
+     */
+    public int numElementalEpisodes()
+    {
+        return this.sequence.numElementalEpisodes();
+    }
+
     /**
      * @return true if its sequence contains a reward
      */
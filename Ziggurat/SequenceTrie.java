@@ -0,0 +1,190 @@
+package Ziggurat;
+
+import java.util.*;
+
+/**
+ * <!-- class SequenceTrie -->
+ *
+ * Each level of the Ziggurat hierarchy keeps one of these tries to index every
+ * {@link Sequence} that has been completed at that level.  Each edge in the
+ * trie is labeled with the id of an {@link Action} and each node that ends a
+ * completed sequence holds a reference to that sequence.
+ *
+ * <p>This works because {@link Ziggurat#update} only ever adds the canonical
+ * copy of an action to a sequence.  As a result, two sequences at the same
+ * level are equal if and only if they contain the same actions (by id) in the
+ * same order.
+ *
+ * <p>The trie also tracks a cursor for the level's current (open) sequence.
+ * As each action is appended to the open sequence the cursor is advanced one
+ * step so that, when the sequence completes, the trie already knows whether an
+ * equivalent sequence exists.  No scan of the sequence list is required.
+ *
+ * @see Sequence#findEquivalent
+ */
+public class SequenceTrie
+{
+    /*======================================================================
+     * Inner Classes
+     *----------------------------------------------------------------------
+     */
+    /**
+     * class Node
+     *
+     * a single node in the trie.  The path from the root to this node spells
+     * out a series of actions.
+     */
+    public class Node
+    {
+        /** child nodes indexed by action id */
+        protected HashMap<Integer,Node> children = new HashMap<Integer,Node>();
+        /** the completed sequence that ends at this node (or null) */
+        protected Sequence seq = null;
+
+        /** @return the sequence that ends at this node (or null if none) */
+        public Sequence getSequence() { return this.seq; }
+    }//class Node
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    /** the root represents the empty sequence */
+    protected Node root = new Node();
+
+    /** this node corresponds to the actions in the current, open sequence.  It
+     * is null if the open sequence has "fallen off" the trie (see {@link
+     * #advance}). */
+    protected Node cursor = root;
+
+    /** number of distinct sequences in the trie */
+    protected int size = 0;
+
+    /** number of times a sequence has been completed (including duplicates) */
+    protected int numCompleted = 0;
+
+    /*======================================================================
+     * Accessors
+     *----------------------------------------------------------------------
+     */
+    /** @return the number of distinct sequences that have been indexed */
+    public int size() { return this.size; }
+
+    /** @return the number of sequences that have been completed (including
+     *          duplicates of earlier ones) */
+    public int numCompleted() { return this.numCompleted; }
+
+    /**
+     * @return the fraction of completed sequences that duplicated a sequence
+     *         that was already in the trie (or 0.0 if none have completed)
+     */
+    public double getReuseRatio()
+    {
+        if (this.numCompleted == 0) return 0.0;
+        return (double)(this.numCompleted - this.size) / (double)this.numCompleted;
+    }
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+    /**
+     * advance
+     *
+     * moves the cursor for the open sequence one step along the edge labeled
+     * by the given action.  Missing nodes are created as needed.
+     *
+     * @param act  the action that was just appended to the open sequence
+     */
+    public void advance(Action act)
+    {
+        Node next = this.cursor.children.get(act.getID());
+        if (next == null)
+        {
+            next = new Node();
+            this.cursor.children.put(act.getID(), next);
+        }
+
+        this.cursor = next;
+    }//advance
+
+    /**
+     * complete
+     *
+     * is called when the open sequence is complete.  If an equivalent sequence
+     * has been completed before it is returned.  Otherwise, the given sequence
+     * is recorded as the canonical copy and returned.  Either way, the cursor
+     * is reset for the next open sequence.
+     *
+     * @param seq  the open sequence that was just completed.  The cursor must
+     *             have been advanced once for each of its actions.
+     *
+     * @return the canonical copy of the given sequence
+     */
+    public Sequence complete(Sequence seq)
+    {
+        Node node = this.cursor;
+        this.cursor = this.root;
+        this.numCompleted++;
+
+        if (node.seq == null)
+        {
+            node.seq = seq;
+            this.size++;
+        }
+
+        return node.seq;
+    }//complete
+
+    /**
+     * find
+     *
+     * locates the node for a given series of actions
+     *
+     * @param prefix  the actions to search with (in order)
+     *
+     * @return the matching node or null if no indexed sequence begins with
+     *         these actions
+     */
+    public Node find(Vector<Action> prefix)
+    {
+        Node node = this.root;
+        for(Action act : prefix)
+        {
+            node = node.children.get(act.getID());
+            if (node == null) return null;
+        }
+
+        return node;
+    }//find
+
+    /**
+     * getSequencesWithPrefix
+     *
+     * retrieves all the indexed sequences that begin with a given series of
+     * actions.  Sequences are returned in depth-first order.
+     *
+     * @param prefix  the actions that each returned sequence must begin with
+     *
+     * @return a (possibly empty) vector of the matching sequences
+     */
+    public Vector<Sequence> getSequencesWithPrefix(Vector<Action> prefix)
+    {
+        Vector<Sequence> result = new Vector<Sequence>();
+        Node start = find(prefix);
+        if (start == null) return result;
+
+        //Iterative depth-first walk of the subtree
+        Vector<Node> stack = new Vector<Node>();
+        stack.add(start);
+        while(stack.size() > 0)
+        {
+            Node node = stack.remove(stack.size() - 1);
+            if (node.seq != null) result.add(node.seq);
+            stack.addAll(node.children.values());
+        }
+
+        return result;
+    }//getSequencesWithPrefix
+
+}//class SequenceTrie
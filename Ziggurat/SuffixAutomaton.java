@@ -0,0 +1,384 @@
+package Ziggurat;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <!-- class SuffixAutomaton -->
+ *
+ * A SuffixAutomaton indexes every substring of a series of symbols that grows
+ * one symbol at a time.  Ziggurat keeps one for the episodes at each level of
+ * its hierarchy.  At levels 1 and above each symbol is the id of the (unique)
+ * sequence inside the episode, so two episodes are equal if and only if their
+ * symbols are equal.
+ *
+ * <p>The automaton is the standard online construction: each state represents
+ * a set of substrings that all end at the same positions in the text; {@link
+ * #extend} takes amortized constant time.  For each state the automaton also
+ * records the first position where its substrings end.  This lets the
+ * orientation methods find the longest suffix of the text that also occurred
+ * earlier, and where it occurred, without scanning the text.
+ *
+ * <p>Most states only have a few outgoing transitions so they're stored as a
+ * small array of (symbol, target) pairs instead of a map.
+ *
+ * @see Ziggurat#findOrientation
+ */
+public class SuffixAutomaton
+{
+    /*======================================================================
+     * Inner Classes
+     *----------------------------------------------------------------------
+     */
+    /**
+     * class Match
+     *
+     * describes an earlier occurrence of a suffix of the text
+     */
+    public static class Match
+    {
+        /** the length of the suffix (zero if none was found) */
+        public int length = 0;
+        /** the position where the earlier occurrence ends (-1 if none) */
+        public int end = -1;
+
+        public Match(int length, int end)
+        {
+            this.length = length;
+            this.end = end;
+        }
+    }//class Match
+
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+    /** initial capacity of the state arrays */
+    public static final int INIT_CAPACITY = 64;
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    /** length of the longest substring in each state */
+    protected int[] len = new int[INIT_CAPACITY];
+    /** suffix link of each state (-1 for the initial state) */
+    protected int[] link = new int[INIT_CAPACITY];
+    /** position of the last symbol of the first occurrence of each state's
+     * substrings */
+    protected int[] firstPos = new int[INIT_CAPACITY];
+    /** transitions out of each state stored as symbol, target, symbol,
+     * target, ... */
+    protected int[][] edges = new int[INIT_CAPACITY][];
+    /** number of transitions out of each state */
+    protected int[] numEdges = new int[INIT_CAPACITY];
+    /** number of states */
+    protected int numStates = 0;
+    /** the state for the entire text */
+    protected int last = 0;
+    /** the symbols added so far */
+    protected int[] text = new int[INIT_CAPACITY];
+    /** the number of symbols added so far */
+    protected int length = 0;
+
+    /*======================================================================
+     * Constructors
+     *----------------------------------------------------------------------
+     */
+    /** creates an automaton for the empty text */
+    public SuffixAutomaton()
+    {
+        this.last = newState(0, -1);
+        this.link[this.last] = -1;
+    }//ctor
+
+    /*======================================================================
+     * Accessors
+     *----------------------------------------------------------------------
+     */
+    /** @return the number of symbols in the text */
+    public int length() { return this.length; }
+
+    /** @return the number of states in the automaton */
+    public int numStates() { return this.numStates; }
+
+    /** @return the symbol at a given position in the text */
+    public int getSymbol(int pos) { return this.text[pos]; }
+
+    /** @return the array that holds the text.  Only the first {@link
+     *          #length} symbols are valid and it must not be modified. */
+    public int[] getText() { return this.text; }
+
+    /** @return the state that represents the whole text */
+    public int getLastState() { return this.last; }
+
+    /** @return the length of the longest substring in a given state */
+    public int getLen(int state) { return this.len[state]; }
+
+    /** @return the suffix link of a given state (-1 for the initial state) */
+    public int getLink(int state) { return this.link[state]; }
+
+    /** @return where the first occurrence of the substrings in a given state
+     *          ends (-1 for the initial state) */
+    public int getFirstPos(int state) { return this.firstPos[state]; }
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+    /**
+     * newState
+     *
+     * allocates a new state with no transitions
+     *
+     * @return the index of the new state
+     */
+    protected int newState(int stateLen, int pos)
+    {
+        //Grow the arrays if needed
+        if (this.numStates == this.len.length)
+        {
+            int newCap = this.len.length * 2;
+            this.len = Arrays.copyOf(this.len, newCap);
+            this.link = Arrays.copyOf(this.link, newCap);
+            this.firstPos = Arrays.copyOf(this.firstPos, newCap);
+            this.edges = Arrays.copyOf(this.edges, newCap);
+            this.numEdges = Arrays.copyOf(this.numEdges, newCap);
+        }
+
+        int state = this.numStates++;
+        this.len[state] = stateLen;
+        this.firstPos[state] = pos;
+        this.edges[state] = null;
+        this.numEdges[state] = 0;
+        return state;
+    }//newState
+
+    /**
+     * next
+     *
+     * @return the state reached from a given state via a given symbol or -1
+     *         if there is no such transition
+     */
+    public int next(int state, int symbol)
+    {
+        int[] arr = this.edges[state];
+        for(int i = 0; i < this.numEdges[state] * 2; i += 2)
+        {
+            if (arr[i] == symbol) return arr[i+1];
+        }
+        return -1;
+    }//next
+
+    /** sets (adds or replaces) the transition from a state via a symbol */
+    protected void setNext(int state, int symbol, int target)
+    {
+        int[] arr = this.edges[state];
+        int n = this.numEdges[state] * 2;
+        for(int i = 0; i < n; i += 2)
+        {
+            if (arr[i] == symbol)
+            {
+                arr[i+1] = target;
+                return;
+            }
+        }
+
+        //Add a new transition
+        if (arr == null)
+        {
+            arr = new int[4];
+        }
+        else if (n == arr.length)
+        {
+            arr = Arrays.copyOf(arr, n * 2);
+        }
+        arr[n] = symbol;
+        arr[n+1] = target;
+        this.edges[state] = arr;
+        this.numEdges[state]++;
+    }//setNext
+
+    /**
+     * extend
+     *
+     * appends a symbol to the end of the text
+     *
+     * @param symbol  the symbol to add
+     */
+    public void extend(int symbol)
+    {
+        //Record the symbol
+        if (this.length == this.text.length)
+        {
+            this.text = Arrays.copyOf(this.text, this.length * 2);
+        }
+        int pos = this.length++;
+        this.text[pos] = symbol;
+
+        //The new state for the whole text
+        int cur = newState(this.len[this.last] + 1, pos);
+        int p = this.last;
+        while((p != -1) && (next(p, symbol) == -1))
+        {
+            setNext(p, symbol, cur);
+            p = this.link[p];
+        }
+
+        if (p == -1)
+        {
+            this.link[cur] = 0;
+        }
+        else
+        {
+            int q = next(p, symbol);
+            if (this.len[p] + 1 == this.len[q])
+            {
+                this.link[cur] = q;
+            }
+            else
+            {
+                //Split q by cloning it
+                int clone = newState(this.len[p] + 1, this.firstPos[q]);
+                if (this.edges[q] != null)
+                {
+                    this.edges[clone] = this.edges[q].clone();
+                    this.numEdges[clone] = this.numEdges[q];
+                }
+                this.link[clone] = this.link[q];
+                while((p != -1) && (next(p, symbol) == q))
+                {
+                    setNext(p, symbol, clone);
+                    p = this.link[p];
+                }
+                this.link[q] = clone;
+                this.link[cur] = clone;
+            }
+        }//else
+
+        this.last = cur;
+    }//extend
+
+    /**
+     * getRepeatedSuffixLength
+     *
+     * @return the length of the longest suffix of the text that also occurs
+     *         (i.e., ends) earlier in the text.  Zero if there is none.
+     */
+    public int getRepeatedSuffixLength()
+    {
+        if (this.length == 0) return 0;
+        return this.len[this.link[this.last]];
+    }//getRepeatedSuffixLength
+
+    /**
+     * getRepeatedSuffixEnd
+     *
+     * @return the position where the first earlier occurrence of the suffix
+     *         described by {@link #getRepeatedSuffixLength} ends.  -1 if there
+     *         is none.
+     */
+    public int getRepeatedSuffixEnd()
+    {
+        if (getRepeatedSuffixLength() == 0) return -1;
+        return this.firstPos[this.link[this.last]];
+    }//getRepeatedSuffixEnd
+
+    /**
+     * findEarlierSuffix
+     *
+     * finds the longest suffix of the text that also occurs such that the
+     * occurrence ends at or before a given position.  If there is more than
+     * one such occurrence, the earliest is returned.
+     *
+     * @param limit  the latest allowed end position.  (The suffix itself, which
+     *               ends at the last position, is never a match.)
+     */
+    public Match findEarlierSuffix(int limit)
+    {
+        return findEarlierSuffix(limit, null);
+    }//findEarlierSuffix
+
+    /**
+     * findEarlierSuffix
+     *
+     * is like {@link #findEarlierSuffix(int)} but gives up as soon as a given
+     * flag is set (e.g., by another thread that no longer needs the result)
+     *
+     * @param stop  the flag to check before each step (or null)
+     *
+     * @return the match or null if the search was stopped
+     */
+    public Match findEarlierSuffix(int limit, AtomicBoolean stop)
+    {
+        limit = Math.min(limit, this.length - 2);
+        return findOccurrence(this.last, this.len[this.last], limit, stop);
+    }//findEarlierSuffix
+
+    /**
+     * findEarlierSuffix
+     *
+     * is like {@link #findEarlierSuffix(int)} but searches for the suffixes of
+     * the text with one additional symbol appended.  The text itself is not
+     * modified.
+     *
+     * @param symbol the symbol to append
+     * @param limit  the latest allowed end position
+     */
+    public Match findEarlierSuffix(int symbol, int limit)
+    {
+        return findEarlierSuffix(symbol, limit, null);
+    }//findEarlierSuffix
+
+    /**
+     * findEarlierSuffix
+     *
+     * is like {@link #findEarlierSuffix(int, int)} but gives up as soon as a
+     * given flag is set
+     *
+     * @param stop  the flag to check before each step (or null)
+     *
+     * @return the match or null if the search was stopped
+     */
+    public Match findEarlierSuffix(int symbol, int limit, AtomicBoolean stop)
+    {
+        //Find the longest suffix of the text that can be followed by symbol
+        int state = this.last;
+        int matchLen = this.len[state];
+        while((state != -1) && (next(state, symbol) == -1))
+        {
+            if ((stop != null) && stop.get()) return null;
+            state = this.link[state];
+            if (state != -1) matchLen = this.len[state];
+        }
+        if (state == -1) return new Match(0, -1);
+
+        return findOccurrence(next(state, symbol), matchLen + 1, limit, stop);
+    }//findEarlierSuffix
+
+    /**
+     * findOccurrence
+     *
+     * is a helper for {@link #findEarlierSuffix}.  Given a state and the
+     * length of a substring in that state it follows suffix links (shortening
+     * the substring) until an occurrence ends at or before the given limit.
+     *
+     * @param stop  the flag to check before each step (or null)
+     */
+    protected Match findOccurrence(int state, int matchLen, int limit,
+                                   AtomicBoolean stop)
+    {
+        //Occurrences only get earlier along suffix links.  (State 0 is the
+        //empty string.)
+        while((state > 0) && (this.firstPos[state] > limit))
+        {
+            if ((stop != null) && stop.get()) return null;
+            state = this.link[state];
+            matchLen = this.len[state];
+        }
+        if (state <= 0) return new Match(0, -1);
+
+        return new Match(Math.min(matchLen, this.len[state]), this.firstPos[state]);
+    }//findOccurrence
+
+}//class SuffixAutomaton
@@ -0,0 +1,111 @@
+package Ziggurat;
+
+import java.util.*;
+
+/**
+ * <!-- class SymbolTable -->
+ *
+ * A SymbolTable assigns a small integer id to each distinct set of sensors and
+ * to each distinct elemental episode (sensors + command) that the agent has
+ * experienced.  Comparing ids is much cheaper than comparing {@link WMESet}s
+ * so the indexes that Ziggurat keeps over its level 0 episodes (e.g., {@link
+ * SuffixAutomaton}) are built from these ids.
+ *
+ * <p>Ids are assigned sequentially starting at zero.
+ */
+public class SymbolTable
+{
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    /** the id of each distinct set of sensors */
+    protected HashMap<WMESet,Integer> sensorIds = new HashMap<WMESet,Integer>();
+    /** the id of each distinct episode keyed by its sensor id and command */
+    protected HashMap<Long,Integer> episodeIds = new HashMap<Long,Integer>();
+
+    /*======================================================================
+     * Accessors
+     *----------------------------------------------------------------------
+     */
+    /** @return the number of distinct sensor sets seen so far */
+    public int numSensorIds() { return this.sensorIds.size(); }
+
+    /** @return the number of distinct episodes seen so far */
+    public int numEpisodeIds() { return this.episodeIds.size(); }
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+    /**
+     * getSensorId
+     *
+     * @return the id of the given sensors.  A new id is assigned if these
+     *         sensors have not been seen before.
+     */
+    public int getSensorId(WMESet sensors)
+    {
+        Integer id = this.sensorIds.get(sensors);
+        if (id == null)
+        {
+            id = this.sensorIds.size();
+            this.sensorIds.put(sensors, id);
+        }
+
+        return id;
+    }//getSensorId
+
+    /**
+     * findSensorId
+     *
+     * @return the id of the given sensors or -1 if they have not been seen
+     *         before
+     */
+    public int findSensorId(WMESet sensors)
+    {
+        Integer id = this.sensorIds.get(sensors);
+        return (id == null) ? -1 : id;
+    }//findSensorId
+
+    /** @return the key used to look up an episode with the given values */
+    protected static long episodeKey(int sensorId, int cmd)
+    {
+        return ((long)sensorId << 32) | (cmd & 0xFFFFFFFFL);
+    }//episodeKey
+
+    /**
+     * getEpisodeId
+     *
+     * @return the id of the given episode.  A new id is assigned if an equal
+     *         episode has not been seen before.
+     */
+    public int getEpisodeId(ElementalEpisode ep)
+    {
+        long key = episodeKey(getSensorId(ep.getSensors()), ep.getCommand());
+        Integer id = this.episodeIds.get(key);
+        if (id == null)
+        {
+            id = this.episodeIds.size();
+            this.episodeIds.put(key, id);
+        }
+
+        return id;
+    }//getEpisodeId
+
+    /**
+     * findEpisodeId
+     *
+     * @return the id of the given episode or -1 if an equal episode has not
+     *         been seen before
+     */
+    public int findEpisodeId(ElementalEpisode ep)
+    {
+        int sensorId = findSensorId(ep.getSensors());
+        if (sensorId == -1) return -1;
+
+        Integer id = this.episodeIds.get(episodeKey(sensorId, ep.getCommand()));
+        return (id == null) ? -1 : id;
+    }//findEpisodeId
+
+}//class SymbolTable
@@ -0,0 +1,140 @@
+package Ziggurat;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * <!-- class TraceReader -->
+ *
+ * A TraceReader reads back the time steps recorded by a {@link TraceWriter}.
+ * Steps are read in chunks so that very long traces can be replayed without
+ * holding the entire trace in memory.
+ *
+ * @see TraceWriter for the file format
+ */
+public class TraceReader
+{
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    /** the file being read */
+    protected DataInputStream in;
+    /** the WMEs defined so far (indexed by id) */
+    protected Vector<WME> wmes = new Vector<WME>();
+    /** number of steps read so far */
+    protected int numSteps = 0;
+
+    /*======================================================================
+     * Constructors
+     *----------------------------------------------------------------------
+     */
+    /** creates a reader for the trace in the given stream */
+    public TraceReader(InputStream in) throws IOException
+    {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        if (this.in.readInt() != TraceWriter.MAGIC)
+        {
+            throw new IOException("not a Ziggurat trace");
+        }
+        int version = this.in.readUnsignedByte();
+        if (version != TraceWriter.VERSION)
+        {
+            throw new IOException("unsupported trace version: " + version);
+        }
+    }//ctor
+
+    /** creates a reader for the trace in the named file */
+    public TraceReader(String fileName) throws IOException
+    {
+        this(new FileInputStream(fileName));
+    }//ctor
+
+    /*======================================================================
+     * Accessors
+     *----------------------------------------------------------------------
+     */
+    /** @return the number of steps read so far */
+    public int getNumSteps() { return this.numSteps; }
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+    /**
+     * read
+     *
+     * reads the next steps in the trace into the given arrays
+     *
+     * @param sensors  receives the sensors at each step
+     * @param cmds     receives the command at each step.  Must be the same
+     *                 length as sensors.
+     *
+     * @return the number of steps read (zero at the end of the trace)
+     */
+    public int read(WMESet[] sensors, int[] cmds) throws IOException
+    {
+        int count = 0;
+        while(count < sensors.length)
+        {
+            //Read the next tag (or detect the end of the trace)
+            int tag = this.in.read();
+            if (tag == -1) break;
+
+            if (tag == TraceWriter.TAG_WME)
+            {
+                String attr = this.in.readUTF();
+                WME.Type type = WME.Type.values()[this.in.readUnsignedByte()];
+                String value = this.in.readUTF();
+                this.wmes.add(new WME(attr, value, type));
+            }
+            else if (tag == TraceWriter.TAG_STEP)
+            {
+                int numWMEs = readVarInt(this.in);
+                Hashtable<String,WME> wset = new Hashtable<String,WME>();
+                for(int i = 0; i < numWMEs; i++)
+                {
+                    WME w = this.wmes.elementAt(readVarInt(this.in));
+                    wset.put(w.attr, w.clone());
+                }
+                sensors[count] = new WMESet(wset);
+                cmds[count] = readVarInt(this.in) - 1;
+                count++;
+            }
+            else
+            {
+                throw new IOException("corrupt trace: unknown record tag " + tag);
+            }
+        }//while
+
+        this.numSteps += count;
+        return count;
+    }//read
+
+    /** closes the trace */
+    public void close() throws IOException
+    {
+        this.in.close();
+    }//close
+
+    /**
+     * readVarInt
+     *
+     * reads an int written by {@link TraceWriter#writeVarInt}
+     */
+    protected static int readVarInt(DataInputStream in) throws IOException
+    {
+        int result = 0;
+        int shift = 0;
+        int b;
+        do
+        {
+            b = in.readUnsignedByte();
+            result |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return result;
+    }//readVarInt
+
+}//class TraceReader
@@ -0,0 +1,153 @@
+package Ziggurat;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * <!-- class TraceWriter -->
+ *
+ * A TraceWriter records the sensors and commands that an agent experiences to
+ * a compact binary file so that the experience can be replayed later (see
+ * {@link TraceReader} and {@link Ziggurat#tickBatch}).
+ *
+ * <p>The file format is a header (magic number and version) followed by a
+ * series of records.  Each record begins with a one byte tag:
+ * <ul>
+ *   <li>{@link #TAG_WME} - defines the next WME id:  an attribute (UTF), a
+ *       type (byte) and a value (UTF).  Each distinct WME is only written
+ *       once.
+ *   <li>{@link #TAG_STEP} - one time step:  the number of WMEs in the
+ *       sensors, the id of each WME and the command plus one.
+ * </ul>
+ * All counts, ids and commands are written as variable length integers so that
+ * a typical step takes only a few bytes.
+ */
+public class TraceWriter
+{
+    /*======================================================================
+     * Constants
+     *----------------------------------------------------------------------
+     */
+    /** identifies a trace file ("ZTRC") */
+    public static final int MAGIC = 0x5A545243;
+    /** the current version of the file format */
+    public static final int VERSION = 1;
+    /** record tag for a new WME definition */
+    public static final int TAG_WME = 1;
+    /** record tag for a time step */
+    public static final int TAG_STEP = 2;
+
+    /*======================================================================
+     * Instance Variables
+     *----------------------------------------------------------------------
+     */
+    /** the file being written */
+    protected DataOutputStream out;
+    /** the id assigned to each distinct WME written so far (keyed by its
+     * string form, which includes its type-specific value) */
+    protected HashMap<String,Integer> wmeIds = new HashMap<String,Integer>();
+    /** number of steps written so far */
+    protected int numSteps = 0;
+
+    /*======================================================================
+     * Constructors
+     *----------------------------------------------------------------------
+     */
+    /** creates a writer that writes a new trace to the given stream */
+    public TraceWriter(OutputStream out) throws IOException
+    {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.out.writeInt(MAGIC);
+        this.out.writeByte(VERSION);
+    }//ctor
+
+    /** creates a writer that writes a new trace to the named file */
+    public TraceWriter(String fileName) throws IOException
+    {
+        this(new FileOutputStream(fileName));
+    }//ctor
+
+    /*======================================================================
+     * Accessors
+     *----------------------------------------------------------------------
+     */
+    /** @return the number of steps written so far */
+    public int getNumSteps() { return this.numSteps; }
+
+    /*======================================================================
+     * Methods
+     *----------------------------------------------------------------------
+     */
+    /**
+     * write
+     *
+     * records a single time step
+     *
+     * @param sensors  the agent's sensor readings at this time step
+     * @param cmd      the command that was selected at this time step.  A
+     *                 trace is only replayed, never acted on, so this must be
+     *                 a real command (not negative).
+     */
+    public void write(WMESet sensors, int cmd) throws IOException
+    {
+        if (cmd < 0)
+        {
+            throw new IllegalArgumentException("no command given for step " + this.numSteps);
+        }
+
+        //Look up (or define) the id of each WME.  Attributes are sorted so
+        //that the same sensors are always written the same way.
+        List<String> keys = new ArrayList<String>(sensors.getSensorKeys());
+        Collections.sort(keys);
+        int[] ids = new int[keys.size()];
+        for(int i = 0; i < ids.length; i++)
+        {
+            WME w = sensors.getAttr(keys.get(i));
+            String key = w.attr + "\0" + w.type.ordinal() + "\0" + w.value;
+            Integer id = this.wmeIds.get(key);
+            if (id == null)
+            {
+                id = this.wmeIds.size();
+                this.wmeIds.put(key, id);
+                this.out.writeByte(TAG_WME);
+                this.out.writeUTF(w.attr);
+                this.out.writeByte(w.type.ordinal());
+                this.out.writeUTF(w.value);
+            }
+            ids[i] = id;
+        }//for
+
+        //Write the step itself
+        this.out.writeByte(TAG_STEP);
+        writeVarInt(this.out, ids.length);
+        for(int id : ids)
+        {
+            writeVarInt(this.out, id);
+        }
+        writeVarInt(this.out, cmd + 1);
+        this.numSteps++;
+    }//write
+
+    /** flushes and closes the trace */
+    public void close() throws IOException
+    {
+        this.out.close();
+    }//close
+
+    /**
+     * writeVarInt
+     *
+     * writes a non-negative int seven bits at a time (low bits first).  The
+     * high bit of each byte is set if more bytes follow.
+     */
+    protected static void writeVarInt(DataOutputStream out, int val) throws IOException
+    {
+        while((val & ~0x7F) != 0)
+        {
+            out.writeByte((val & 0x7F) | 0x80);
+            val >>>= 7;
+        }
+        out.writeByte(val);
+    }//writeVarInt
+
+}//class TraceWriter
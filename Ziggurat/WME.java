@@ -116,6 +116,13 @@ public class WME
             && (w.type == this.type);
 	}//equals
 
+    /** returns a hash code that is consistent with {@link #equals} */
+    public int hashCode()
+    {
+        return (this.attr.hashCode() * 31 + this.value.hashCode()) * 31
+            + this.type.ordinal();
+    }//hashCode
+
     /** returns a String representation of this WME */
 	public String toString () 
     {
@@ -90,6 +90,20 @@ public class WMESet
 		}
 		return true;
 	}//equals
+
+	/**
+	 * @return a hash code that is consistent with {@link #equals}.  (The order
+	 * of the WMEs doesn't matter.)
+	 */
+	public int hashCode()
+	{
+		int hash = 0;
+		for(WME w : this.sensors.values())
+		{
+			hash += w.hashCode();
+		}
+		return hash;
+	}//hashCode
 	
 	/**
 	 * @return the string representation of this WMESet.
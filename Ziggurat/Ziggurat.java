@@ -1,6 +1,10 @@
 package Ziggurat;
  
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * class Ziggurat
@@ -24,21 +28,50 @@ public class Ziggurat
      * Constants
      *----------------------------------------------------------------------
      */
-    /** maximum number of levels in the Ziggurat
-     *  (In practice, this may not be necessary as higher levels become
-     *   increasingly harder to achieve. ) */
+    /** default maximum number of levels in the Ziggurat (see {@link
+     *  #setMaxLevelDepth}).  (In practice, this may not be necessary as
+     *  higher levels become increasingly harder to achieve. ) */
     public static final int MAX_LEVEL_DEPTH = 4;
+    /** the per-level memory caps and adaptive growth only apply to this level
+     * and above.  Levels 0 and 1 are always kept whole because orientation
+     * relies on every level 0 sequence appearing as a level 1 episode. */
+    public static final int FIRST_CAPPED_LEVEL = 2;
+    /** in adaptive mode, a level must complete this many sequences before its
+     * reuse ratio is trusted enough to grow the level above it */
+    public static final int ADAPTIVE_MIN_SEQS = 20;
     /** initial self confidence value */
     public static final double INIT_SELF_CONFIDENCE = 0.5;
     /** maximum confidence value */
     public static final double MAX_CONFIDENCE = 1.0;
     /** minimum confidence value */
     public static final double MIN_CONFIDENCE = 0.0;
-    /** use this number down as a way to speed up findRoute().  Set to zero for
-        unlimited route searching. */
+    /** the default number of candidates {@link #findRoute} may examine (see
+        {@link #setPlanBudget}).  Set to zero for unlimited route searching. */
     private static final int MAX_ROUTE_CANDS = 0;
     /** maximum number of replacements that can be applied at any one time */
     private static final int MAX_REPLS = 1;
+    /** number of steps that {@link #replay} reads from a trace at a time */
+    public static final int REPLAY_CHUNK_SIZE = 4096;
+    /** {@link #calcUniqueness} is only run in parallel once there are at
+     * least this many level 0 episodes to scan */
+    public static final int PARALLEL_MIN_EPISODES = 256;
+    /** default number of recent episodes matched by approximate orientation */
+    public static final int DEFAULT_APPROX_WINDOW = 16;
+
+    /** the ways that {@link #findRoute} can find a route (see {@link
+     * #setPlanner}).  They all find a route of the same length. */
+    public enum Planner
+    {
+        /** follow the first steps recorded by the level's {@link RewardField} */
+        REWARD_FIELD,
+        /** search shortest candidate first (Dijkstra) */
+        UNIFORM_COST,
+        /** search with the level's {@link RewardField} as the heuristic */
+        A_STAR,
+        /** search forward from the seed and backward from the rewards at
+         * the same time */
+        BIDIRECTIONAL
+    };
 
     /*======================================================================
      * Instance Variables
@@ -50,6 +83,27 @@ public class Ziggurat
     protected Vector<Vector<Action>> actions = new Vector<Vector<Action>>();
     /** All sequences learned so far */
     protected Vector<Vector<Sequence>> seqs = new Vector<Vector<Sequence>>();
+    /** an index of the distinct sequences completed at each level */
+    protected Vector<SequenceTrie> seqTries = new Vector<SequenceTrie>();
+    /** an index of the substrings of the episodes at each level (used for
+     * orientation).  Level 0 episodes are only added to their index once
+     * their command is final (see {@link #commitEpisode}). */
+    protected Vector<SuffixAutomaton> epIndexes = new Vector<SuffixAutomaton>();
+    /** the sequences at each level connected by the actions at the level
+     * above (used for planning) */
+    protected Vector<ActionGraph> actionGraphs = new Vector<ActionGraph>();
+    /** ids for the distinct sensors and level 0 episodes */
+    protected SymbolTable symbols = new SymbolTable();
+    /** where each level 0 episode appears in the level 1 episodes */
+    protected PositionMap lvl0Positions = new PositionMap();
+    /** a backwards index of the level 0 episodes that answers {@link
+     * #calcUniqueness} for every command at once (null if disabled) */
+    protected ContextTree noveltyTree = new ContextTree(ContextTree.DEFAULT_DEPTH);
+    /** a Bloom filter over the level 0 episodes that rules out commands
+     * quickly in {@link #calcUniqueness} (null if disabled) */
+    protected NoveltyFilter noveltyFilter = new NoveltyFilter();
+    /** the commands tried so far in each sensor state */
+    protected CommandTracker cmdTracker = new CommandTracker();
     /** The agent's current plan for reaching a goal */
     protected Plan currPlan = null;
     /** All replacement rules that the agent has tried */
@@ -67,6 +121,63 @@ public class Ziggurat
     /** this is the highest level in the hierarchy that contains data.  This is
      * used by the orientation methods */
     protected int lastUpdateLevel = 0;
+    /** counts the updates that have started at level 0.  Each such update
+     * begins a new "chain" of updates up the hierarchy. */
+    protected int updateChain = 0;
+    /** the chain that the background thread is currently updating */
+    protected int asyncChain = 0;
+    /** when this is non-null, sequences completed at level 0 are promoted to
+     * the higher levels by this single background thread (see {@link
+     * #setAsyncUpdates}) */
+    protected ExecutorService asyncUpdater = null;
+    /** the most recently queued background update (or null) */
+    protected Future<?> lastAsyncUpdate = null;
+    /** when this is true, {@link #calcUniqueness} is run for all commands
+     * at once on the common fork-join pool */
+    protected boolean parallelUniqueness = false;
+    /** when this is true, {@link #initPlan} searches level 0 for an
+     * orientation on the common fork-join pool while the higher levels are
+     * searched */
+    protected boolean parallelOrientation = false;
+    /** the number of level 0 orientation searches that {@link #initPlan} has
+     * waited for the result of */
+    protected int numElementalSearches = 0;
+    /** the most errors allowed in an approximate orientation match (zero to
+     * only allow exact matches).  See {@link #setApproximateOrientation}. */
+    protected int approxMaxErrors = 0;
+    /** the number of recent episodes matched by approximate orientation */
+    protected int approxWindow = DEFAULT_APPROX_WINDOW;
+    /** how {@link #findRoute} finds a route */
+    protected Planner planner = Planner.REWARD_FIELD;
+    /** the number of candidates examined by the most recent route search */
+    protected int lastPlanExpansions = 0;
+    /** the number of candidates examined by all route searches */
+    protected long totalPlanExpansions = 0;
+    /** the most time (in nanoseconds) a route search may take (zero for
+     * unlimited) */
+    protected long planTimeBudget = 0;
+    /** the most candidates a route search may examine (zero for unlimited) */
+    protected int planCandBudget = MAX_ROUTE_CANDS;
+    /** when the most recent route search began (see {@link System#nanoTime}) */
+    protected long planStartTime = 0;
+    /** true if the most recent route search ran out of time or candidates */
+    protected boolean planBudgetExhausted = false;
+    /** the routes recently found by {@link #findRoute} (null if disabled) */
+    protected PlanCache planCache = new PlanCache(PlanCache.DEFAULT_CAPACITY);
+    /** the most sequences each level's {@link RewardField} repairs per
+     * change (zero for unlimited) */
+    protected int repairBudget = RewardField.DEFAULT_REPAIR_BUDGET;
+    /** the number of sequences whose lengths were repaired while planning
+     * the most recent route */
+    protected long lastPlanRepairs = 0;
+    /** the level 0 actions whose LHS has each sensor state (indexed by
+     * sensor id) */
+    protected HashMap<Integer,Vector<Action>> lvl0Successors = new HashMap<Integer,Vector<Action>>();
+    /** the most steps {@link #repairPlan} may take to rejoin the current plan
+     * (zero to always replan) */
+    protected int planRepairDepth = 0;
+    /** the number of times a failed plan has been repaired */
+    protected int numPlanRepairs = 0;
     /** this vector contains all {@link DecisionElement}s that have recently been
      * used to make a decision.  When the outcome of decision(s) is known these
      * active elements' utilities are adjusted based upon that outcome.
@@ -78,6 +189,18 @@ public class Ziggurat
     protected int stepsSoFar = 0;
     /** for all your random number geneation needs! */
     protected Random randGen = new Random();
+    /** maximum number of levels in this agent's hierarchy */
+    protected int maxLevelDepth = MAX_LEVEL_DEPTH;
+    /** maximum number of episodes/actions/distinct sequences at each level at
+     * or above {@link #FIRST_CAPPED_LEVEL}.  A level that reaches any of its
+     * caps stops receiving new episodes.  Zero means unlimited. */
+    protected int maxEpisodesPerLevel = 0;
+    protected int maxActionsPerLevel = 0;
+    protected int maxSequencesPerLevel = 0;
+    /** adaptive mode: a new level is only grown when the sequence reuse ratio
+     * (see {@link SequenceTrie#getReuseRatio}) of the level below is at least
+     * this value.  Zero disables adaptive mode. */
+    protected double minReuseRatio = 0.0;
 
     /*======================================================================
      * Constructors
@@ -94,11 +217,7 @@ public class Ziggurat
     public Ziggurat(Environment env)
     {
         //Init episodes, actions and sequences at level 0 
-        this.epmems.add(new Vector<Episode>());
-        this.actions.add(new Vector<Action>());
-        Vector<Sequence> startSeq = new Vector<Sequence>();
-        startSeq.add(new Sequence());
-        this.seqs.add(startSeq);
+        addLevel();
         this.repls.add(new Vector<Replacement>());
 
         //record input parameters
@@ -119,13 +238,64 @@ public class Ziggurat
     public static void setMonitor(Monitor newMon) { Ziggurat.mon = newMon; }
 
     /** retrieve all episodes */
-    public Vector<Vector<Episode>> getEpmems() { return this.epmems; }
+    public Vector<Vector<Episode>> getEpmems() { syncHierarchy(); return this.epmems; }
 
     /** retrieve all actions */
-    public Vector<Vector<Action>> getActions() { return this.actions; }
+    public Vector<Vector<Action>> getActions() { syncHierarchy(); return this.actions; }
 
     /** retrieve all sequences */
-    public Vector<Vector<Sequence>> getSequences() { return this.seqs; }
+    public Vector<Vector<Sequence>> getSequences() { syncHierarchy(); return this.seqs; }
+
+    /** retrieve the graph of the actions at a given level */
+    public ActionGraph getActionGraph(int level)
+    {
+        syncHierarchy();
+        return this.actionGraphs.elementAt(level);
+    }
+
+    /** retrieve the index of distinct sequences at a given level */
+    public SequenceTrie getSequenceTrie(int level)
+    {
+        syncHierarchy();
+        return this.seqTries.elementAt(level);
+    }
+
+    /** @return true if the higher levels are updated in the background */
+    public boolean isAsyncUpdates() { return this.asyncUpdater != null; }
+
+    /**
+     * setAsyncUpdates
+     *
+     * turns asynchronous updates on or off.  When they are on, {@link #tick}
+     * only updates level 0 itself.  Sequences completed at level 0 are queued
+     * for a background thread that updates level 1 and above so that the cost
+     * of those updates doesn't land on the tick that completed the sequence.
+     * The background thread processes the sequences in order so the resulting
+     * hierarchy is the same.  Anything that reads the higher levels first
+     * waits for the queue to empty (see {@link #syncHierarchy}).
+     */
+    public void setAsyncUpdates(boolean on)
+    {
+        if (on == isAsyncUpdates()) return;
+
+        if (on)
+        {
+            this.asyncUpdater = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    public Thread newThread(Runnable r)
+                    {
+                        Thread t = new Thread(r, "Ziggurat update");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        }
+        else
+        {
+            syncHierarchy();
+            this.asyncUpdater.shutdown();
+            this.asyncUpdater = null;
+        }
+    }//setAsyncUpdates
 
     /** set the random number generator's seed */
     public void setRandSeed(int x) { this.randGen.setSeed(x); }
@@ -133,6 +303,257 @@ public class Ziggurat
     /** set the random number generator itself */
     public void setRandGen(Random newGen) { this.randGen = newGen; }
 
+    /** retrieve the maximum number of levels in the hierarchy */
+    public int getMaxLevelDepth() { return this.maxLevelDepth; }
+
+    /**
+     * set the maximum number of levels in the hierarchy.  At least two levels
+     * are required to plan.  Levels that already exist are not removed but
+     * levels at or above the new depth will no longer be updated.
+     */
+    public void setMaxLevelDepth(int depth)
+    {
+        if (depth < 2)
+        {
+            System.err.println("ERROR:  Ziggurat requires at least two levels (given " + depth + ")");
+            return;
+        }
+        this.maxLevelDepth = depth;
+    }
+
+    /** set the per-level memory caps (zero for unlimited).  See {@link
+     * #FIRST_CAPPED_LEVEL}. */
+    public void setLevelCaps(int maxEpisodes, int maxActions, int maxSequences)
+    {
+        this.maxEpisodesPerLevel = maxEpisodes;
+        this.maxActionsPerLevel = maxActions;
+        this.maxSequencesPerLevel = maxSequences;
+    }
+
+    /** set the reuse ratio threshold for adaptive mode (zero to disable) */
+    public void setMinReuseRatio(double ratio) { this.minReuseRatio = ratio; }
+
+    /**
+     * setNoveltyFilter
+     *
+     * resizes the Bloom filter used by {@link #calcUniqueness}.  The filter is
+     * rebuilt from the episodes seen so far.
+     *
+     * @param numBits    the size of the filter in bits (zero to disable it)
+     * @param numHashes  the number of bits set per item
+     */
+    public void setNoveltyFilter(int numBits, int numHashes)
+    {
+        if (numBits <= 0)
+        {
+            this.noveltyFilter = null;
+            return;
+        }
+
+        this.noveltyFilter = new NoveltyFilter(numBits, numHashes,
+                                               NoveltyFilter.DEFAULT_MAX_GRAM);
+        if (this.epmems.size() == 0) return;
+        Vector<Episode> level0Eps = this.epmems.elementAt(0);
+        for(int i = 0; i < this.epIndexes.elementAt(0).length(); i++)
+        {
+            ElementalEpisode ep = (ElementalEpisode)level0Eps.elementAt(i);
+            this.noveltyFilter.add(this.symbols.getEpisodeId(ep),
+                                   this.symbols.getSensorId(ep.getSensors()),
+                                   ep.getCommand());
+        }
+    }//setNoveltyFilter
+
+    /**
+     * setContextTreeDepth
+     *
+     * sets the depth of the context tree used in place of {@link
+     * #calcUniqueness}.  The tree is rebuilt from the episodes seen so far.
+     *
+     * @param depth  the new depth (zero to disable the tree)
+     */
+    public void setContextTreeDepth(int depth)
+    {
+        if (depth <= 0)
+        {
+            this.noveltyTree = null;
+            return;
+        }
+
+        this.noveltyTree = new ContextTree(depth);
+        if (this.epmems.size() == 0) return;
+        Vector<Episode> level0Eps = this.epmems.elementAt(0);
+        for(int i = 0; i < this.epIndexes.elementAt(0).length(); i++)
+        {
+            ElementalEpisode ep = (ElementalEpisode)level0Eps.elementAt(i);
+            this.noveltyTree.add(this.symbols.getEpisodeId(ep),
+                                 this.symbols.getSensorId(ep.getSensors()),
+                                 ep.getCommand());
+        }
+    }//setContextTreeDepth
+
+    /**
+     * setParallelUniqueness
+     *
+     * turns parallel command selection on or off.  When it is on and the
+     * uniqueness of the commands must be calculated by scanning the level 0
+     * episodes, each command is scanned by a separate task on the common
+     * fork-join pool.  The selected command is the same either way.
+     */
+    public void setParallelUniqueness(boolean on) { this.parallelUniqueness = on; }
+
+    /**
+     * setParallelOrientation
+     *
+     * turns parallel orientation on or off.  When it is on, {@link #initPlan}
+     * starts the level 0 search ({@link #findElementalOrientation}) in the
+     * background as soon as it begins searching the higher levels ({@link
+     * #findOrientation}).  If a higher level finds a match the level 0
+     * search is told to stop, and it checks for this at every step, so the
+     * result is the same either way.  initPlan still waits for it to notice so
+     * that it never reads the level 0 episodes while the next tick is adding
+     * to them.
+     */
+    public void setParallelOrientation(boolean on) { this.parallelOrientation = on; }
+
+    /**
+     * @return the number of level 0 orientation searches that {@link
+     *         #initPlan} has waited for the result of
+     */
+    public int getNumElementalSearches() { return this.numElementalSearches; }
+
+    /**
+     * setPlanner
+     *
+     * selects how {@link #findRoute} finds a route.  By default it follows
+     * the shortest route recorded by the level's {@link RewardField}.  The
+     * route has the same length either way.
+     */
+    public void setPlanner(Planner planner)
+    {
+        this.planner = planner;
+
+        //Another planner may break ties differently
+        if (this.planCache != null) this.planCache.clear();
+    }//setPlanner
+
+    /** @return how {@link #findRoute} finds a route */
+    public Planner getPlanner() { return this.planner; }
+
+    /** @return the number of candidate routes examined by the most recent
+     *          call to {@link #findRoute} */
+    public int getLastPlanExpansions() { return this.lastPlanExpansions; }
+
+    /** @return the number of candidate routes examined by all calls to
+     *          {@link #findRoute} */
+    public long getTotalPlanExpansions() { return this.totalPlanExpansions; }
+
+    /**
+     * setPlanBudget
+     *
+     * limits the searches made by {@link #findRoute} so that a single call
+     * can't hold up the agent for long.  When a search runs out of time or
+     * candidates it returns the shortest complete route it has found so far.
+     * If it hasn't found one the uniform cost and A* searches return the most
+     * promising partial route instead.  (Following the {@link RewardField}
+     * is not a search and is never limited.)
+     *
+     * @param nanos     the most time a search may take in nanoseconds (zero
+     *                  for unlimited)
+     * @param maxCands  the most candidates a search may examine (zero for
+     *                  unlimited)
+     */
+    public void setPlanBudget(long nanos, int maxCands)
+    {
+        this.planTimeBudget = nanos;
+        this.planCandBudget = maxCands;
+    }//setPlanBudget
+
+    /** @return true if the most recent call to {@link #findRoute} ran out of
+     *          time or candidates before it was sure its route was the
+     *          shortest */
+    public boolean wasPlanBudgetExhausted() { return this.planBudgetExhausted; }
+
+    /**
+     * setPlanCacheSize
+     *
+     * sets how many of the routes found by {@link #findRoute} are kept so
+     * that they can be reused when the agent plans from the same sequence
+     * again.  A route is only reused until the level's {@link ActionGraph}
+     * changes.
+     *
+     * @param capacity  the most routes to keep (zero to turn the cache off)
+     */
+    public void setPlanCacheSize(int capacity)
+    {
+        this.planCache = (capacity > 0) ? new PlanCache(capacity) : null;
+    }//setPlanCacheSize
+
+    /** @return the routes recently found by {@link #findRoute} including
+     *          its hit and miss counts (null if disabled) */
+    public PlanCache getPlanCache() { return this.planCache; }
+
+    /**
+     * setRepairBudget
+     *
+     * sets how many sequences each level's {@link RewardField} repairs when an
+     * action is learned.  Any remaining repairs are made the next time a
+     * route is planned at that level.  A small budget keeps learning cheap
+     * and moves the cost to replanning (see {@link #getLastPlanRepairs}).
+     *
+     * @param budget  the most sequences to repair per change (zero for
+     *                unlimited)
+     */
+    public void setRepairBudget(int budget)
+    {
+        this.repairBudget = budget;
+        for(ActionGraph graph : this.actionGraphs)
+        {
+            graph.getRewardField().setRepairBudget(budget);
+        }
+    }//setRepairBudget
+
+    /** @return the number of sequences whose lengths were repaired while
+     *          planning the most recent route.  This is how much replanning
+     *          cost beyond walking the route. */
+    public long getLastPlanRepairs() { return this.lastPlanRepairs; }
+
+    /**
+     * setPlanRepairDepth
+     *
+     * sets how far {@link #repairPlan} searches for a way back to the current
+     * plan when one of its steps fails.  Only if none is found does the agent
+     * make a new plan.  Repairs are off by default.  In the sample
+     * environments most plan failures are caused by sensor aliasing, and
+     * rejoining the old plan reaches the goals slightly slower than
+     * replanning.
+     *
+     * @param depth  the most steps allowed to rejoin the plan (zero to always
+     *               make a new plan)
+     */
+    public void setPlanRepairDepth(int depth) { this.planRepairDepth = depth; }
+
+    /** @return the number of times a failed plan has been repaired */
+    public int getNumPlanRepairs() { return this.numPlanRepairs; }
+
+    /**
+     * setApproximateOrientation
+     *
+     * turns approximate orientation on or off.  When it is on, {@link
+     * #findOrientation} also looks for a past series of episodes that matches
+     * the most recent ones with a few errors.  Such a match is used instead of
+     * the exact match when it accounts for more of the recent episodes.
+     *
+     * @param maxErrors  the most substitutions, insertions or deletions
+     *                   allowed (zero to turn approximate orientation off)
+     * @param window     the number of recent episodes to match (at most
+     *                   {@link ApproximateMatcher#MAX_WINDOW})
+     */
+    public void setApproximateOrientation(int maxErrors, int window)
+    {
+        this.approxMaxErrors = Math.max(0, maxErrors);
+        this.approxWindow = Math.max(1, Math.min(window, ApproximateMatcher.MAX_WINDOW));
+    }//setApproximateOrientation
+
     /*======================================================================
      * Public Methods
      *----------------------------------------------------------------------
@@ -158,8 +579,236 @@ public class Ziggurat
         this.epmems.elementAt(0).add(ep);
         update(0);
 
-        
         // If we receive a reward, update the memory to reflect this
+        checkReward(sensors);
+
+        //Select the agent's next action
+        int cmd = chooseCommand();
+        ep.setCommand(cmd);
+        commitEpisode(ep);
+
+
+        //Log the resulting episode
+        this.mon.logPart("Using command " + env.stringify(cmd) + " to complete episode #" + (epmems.size()-1) + ":  ");
+        this.mon.log(ep);
+
+        //Return the result
+        this.mon.exit("tick");
+        return cmd;
+
+    }//tick
+
+    /**
+     * tickBatch
+     *
+     * is the equivalent of calling {@link #tick} once for each of a series of
+     * sensor readings where the command at each step has already been decided
+     * (e.g., when training from a recorded stream).  The resulting episodes,
+     * actions and sequences are the same as if each step were given to tick.
+     *
+     * <p>The per-step overhead is paid once for the whole batch: individual
+     * steps are not logged (a single summary is; see {@link
+     * Monitor#setQuiet}) and, since the agent isn't following its plan during
+     * the batch, the current plan is abandoned once up front.
+     *
+     * @param sensors     the agent's sensor readings at each time step
+     * @param forcedCmds  the command that was taken at each step.  The last
+     *                    entry may be negative to have the agent select the
+     *                    command for the last step itself.
+     *
+     * @return the command for the last step (or -1 if the input is invalid)
+     */
+    public int tickBatch(WMESet[] sensors, int[] forcedCmds)
+    {
+        //Validate the input
+        int last = sensors.length - 1;
+        if ((sensors.length != forcedCmds.length) || (last < 0))
+        {
+            System.err.println("ERROR:  tickBatch requires one command per sensor reading");
+            return -1;
+        }
+        for(int i = 0; i < last; i++)
+        {
+            if (forcedCmds[i] < 0)
+            {
+                System.err.println("ERROR:  tickBatch given no command for step " + i);
+                return -1;
+            }
+        }
+
+        this.mon.enter("tickBatch");
+
+        //The agent isn't following its plan during the batch
+        this.currPlan = null;
+        this.activeDecEls.clear();
+
+        //Silence this thread's messages for the steps themselves.  (The
+        //monitor is shared with other threads so it isn't replaced.)
+        boolean wasQuiet = this.mon.isQuiet();
+        this.mon.setQuiet(true);
+        int startGoalCount = this.goalCount;
+
+        ElementalEpisode ep = null;
+        try
+        {
+            for(int i = 0; i <= last; i++)
+            {
+                // Create new Episode and update the hierarchy with it
+                ep = new ElementalEpisode(sensors[i]);
+                ep.setCommand(-1);
+                this.epmems.elementAt(0).add(ep);
+                update(0);
+                checkReward(sensors[i]);
+
+                //Complete the episode with the given command
+                if (forcedCmds[i] >= 0)
+                {
+                    ep.setCommand(forcedCmds[i]);
+                    commitEpisode(ep);
+                    (this.stepsSoFar)++;
+                }
+            }//for
+        }
+        finally
+        {
+            this.mon.setQuiet(wasQuiet);
+        }
+        this.mon.log("Learned from %d steps (%d goals).",
+                     sensors.length, this.goalCount - startGoalCount);
+
+        //Select the command for the last step if it wasn't given
+        int cmd = forcedCmds[last];
+        if (cmd < 0)
+        {
+            cmd = chooseCommand();
+            ep.setCommand(cmd);
+            commitEpisode(ep);
+        }
+
+        this.mon.exit("tickBatch");
+        return cmd;
+    }//tickBatch
+
+    /**
+     * replay
+     *
+     * learns from every step in a recorded trace (see {@link TraceWriter}).
+     * The steps are given to {@link #tickBatch} a chunk at a time so no
+     * commands are chosen and no planning is done.
+     *
+     * @param trace  the trace to learn from
+     *
+     * @return the number of steps replayed
+     *
+     * @throws IOException if the trace can't be read or a step in it has no
+     *         command
+     */
+    public int replay(TraceReader trace) throws IOException
+    {
+        WMESet[] sensors = new WMESet[REPLAY_CHUNK_SIZE];
+        int[] cmds = new int[REPLAY_CHUNK_SIZE];
+        int total = 0;
+
+        int count = trace.read(sensors, cmds);
+        while(count > 0)
+        {
+            //The last chunk is probably a partial one
+            if (count < REPLAY_CHUNK_SIZE)
+            {
+                sensors = Arrays.copyOf(sensors, count);
+                cmds = Arrays.copyOf(cmds, count);
+            }
+
+            //Every step must have a command or else tickBatch would either
+            //reject the chunk or choose one itself
+            for(int i = 0; i < count; i++)
+            {
+                if (cmds[i] < 0)
+                {
+                    throw new IOException("corrupt trace: no command for step " + (total + i));
+                }
+            }
+            if (tickBatch(sensors, cmds) < 0)
+            {
+                throw new IOException("could not replay steps " + total + " to " + (total + count - 1));
+            }
+            total += count;
+
+            count = trace.read(sensors, cmds);
+        }//while
+
+        return total;
+    }//replay
+
+    /**
+     * syncHierarchy
+     *
+     * waits until all queued background updates (see {@link
+     * #setAsyncUpdates}) are complete so that the entire hierarchy is
+     * consistent.  This returns immediately if there are none.
+     */
+    public void syncHierarchy()
+    {
+        if (this.lastAsyncUpdate == null) return;
+
+        try
+        {
+            this.lastAsyncUpdate.get();
+        }
+        catch(InterruptedException ie)
+        {
+            System.err.println("ERROR:  interrupted while waiting for the hierarchy to update");
+            Thread.currentThread().interrupt();
+            return;
+        }
+        catch(ExecutionException ee)
+        {
+            System.err.println("ERROR:  background update of the hierarchy failed");
+            ee.getCause().printStackTrace();
+            System.exit(-4);
+        }
+
+        this.lastAsyncUpdate = null;
+    }//syncHierarchy
+
+    /*======================================================================
+     * Non-Public Methods
+     *----------------------------------------------------------------------
+     */
+    /**
+     * commitEpisode
+     *
+     * is called once the command of the newest level 0 episode is final so
+     * that the episode can be added to the level 0 index.
+     *
+     * @param ep  the newest level 0 episode
+     */
+    protected void commitEpisode(ElementalEpisode ep)
+    {
+        int epId = this.symbols.getEpisodeId(ep);
+        this.epIndexes.elementAt(0).extend(epId);
+        int sensorId = this.symbols.getSensorId(ep.getSensors());
+        if (this.noveltyTree != null)
+        {
+            this.noveltyTree.add(epId, sensorId, ep.getCommand());
+        }
+        this.cmdTracker.markTried(sensorId, ep.getCommand());
+        if (this.noveltyFilter != null)
+        {
+            this.noveltyFilter.add(epId, sensorId, ep.getCommand());
+        }
+    }//commitEpisode
+
+    /**
+     * checkReward
+     *
+     * checks whether the given sensors contain a reward.  If so, the current
+     * plan (if any) is complete and the goal is recorded.
+     *
+     * @param sensors  the agent's sensor readings at this time step
+     */
+    protected void checkReward(WMESet sensors)
+    {
         WME rewardWME = sensors.getAttr(WME.REWARD_STRING);
         if((rewardWME != null) && (rewardWME.getDouble()  > 0.0))
         {
@@ -182,26 +831,28 @@ public class Ziggurat
             this.stepsSoFar = 0;
             
         }//if
+    }//checkReward
 
-        //Select the agent's next action
-        int cmd = chooseCommand();
-        ep.setCommand(cmd);
-
-
-        //Log the resulting episode
-        this.mon.logPart("Using command " + env.stringify(cmd) + " to complete episode #" + (epmems.size()-1) + ":  ");
-        this.mon.log(ep);
-
-        //Return the result
-        this.mon.exit("tick");
-        return cmd;
-
-    }//tick
-
-    /*======================================================================
-     * Non-Public Methods
-     *----------------------------------------------------------------------
+    /**
+     * addLevel
+     *
+     * adds a new, empty level to the top of the hierarchy.  The new level
+     * begins with a single empty sequence that is ready to receive actions.
      */
+    protected void addLevel()
+    {
+        this.epmems.add(new Vector<Episode>());
+        this.actions.add(new Vector<Action>());
+        Vector<Sequence> startSeq = new Vector<Sequence>();
+        startSeq.add(new Sequence());
+        this.seqs.add(startSeq);
+        this.seqTries.add(new SequenceTrie());
+        this.epIndexes.add(new SuffixAutomaton());
+        ActionGraph graph = new ActionGraph(this.actionGraphs.size());
+        graph.getRewardField().setRepairBudget(this.repairBudget);
+        this.actionGraphs.add(graph);
+    }//addLevel
+
     /**
      * findClosestExistingAction
      *
@@ -268,7 +919,7 @@ public class Ziggurat
         this.mon.enter("update(level " + level + ")");
 
         // Ensure that the level is within the accepted range for the vectors
-        if(level < 0 || level >= MAX_LEVEL_DEPTH)
+        if(level < 0 || level >= this.maxLevelDepth)
         {
             this.mon.log("Exiting update(): level %d out of range", level);
             return -3;
@@ -287,6 +938,7 @@ public class Ziggurat
         Vector<Episode> episodeList = this.epmems.elementAt(level);
         Vector<Action> actionList = this.actions.elementAt(level);
         Vector<Sequence> sequenceList = this.seqs.elementAt(level);
+        SequenceTrie seqTrie = this.seqTries.elementAt(level);
 
         // You need a minimum of two episodes to make an action
         if(episodeList.size() <= 1)
@@ -345,6 +997,12 @@ public class Ziggurat
             this.mon.log(newAction);
             actionList.add(newAction);
 
+            //The planner follows the actions above level 0 from one
+            //sequence to the next.  Plan repairs follow the level 0 actions
+            //from one sensor state to the next.
+            if (level > 0) this.actionGraphs.elementAt(level - 1).addEdge(newAction);
+            else addSuccessor(newAction);
+
             // set this variable so that we recursively update the next level
             // with this action
             updateExistingAction = newAction;
@@ -362,7 +1020,7 @@ public class Ziggurat
         
         //Log that an update was completed at this level.  This is used by
         //findOrientation()
-        this.lastUpdateLevel = level;
+        recordUpdateLevel(level);
 
         // add most recently seen action to current sequence
         Sequence currSequence = sequenceList.elementAt(sequenceList.size() - 1);
@@ -373,6 +1031,7 @@ public class Ziggurat
         this.mon.tab();
         this.mon.log(currSequence);
         currSequence.add(updateExistingAction);
+        seqTrie.advance(updateExistingAction);
 
         // if the action we just added is indeterminate or has yielded a reward
         // then end the current sequence and start a new one
@@ -380,9 +1039,10 @@ public class Ziggurat
         {
             
             // if the sequence we just completed already exists replace it with
-            // a reference to the one it is duplicating
-            Sequence duplicate = currSequence.findEquivalent(sequenceList);
-            if (duplicate != null)
+            // a reference to the one it is duplicating.  The trie has tracked
+            // the open sequence all along so no search is needed.
+            Sequence duplicate = seqTrie.complete(currSequence);
+            if (duplicate != currSequence)
             {
                 sequenceList.setElementAt(duplicate, sequenceList.size() - 1);
 
@@ -390,6 +1050,12 @@ public class Ziggurat
                 //to the episode list in the code below
                 currSequence = duplicate;
             }
+            else
+            {
+                //this is a new sequence.  It's complete so it won't change
+                //anymore.
+                currSequence.makeImmutable();
+            }
                 
             // now we can create a new, empty sequence at this level so it's
             // ready for future actions
@@ -397,30 +1063,30 @@ public class Ziggurat
 
             // this newly completed sequence becomes the next episode in the
             // next level's episodic memory unless the required level doesn't
-            // exist
-            if (level + 1 < MAX_LEVEL_DEPTH)
+            // exist or isn't accepting new episodes
+            if (canPromoteTo(level + 1))
             {
-                this.mon.log("Creating a new level %d episode with sequence: ", level + 1);
-                this.mon.tab();
-                this.mon.log(currSequence);
-
-                //Make sure the parent level exists!
-                while (this.epmems.size() <= level + 1)
+                //In async mode the rest of the update is done in the
+                //background
+                if ((level == 0) && (this.asyncUpdater != null))
                 {
-                    this.epmems.add(new Vector<Episode>());
-                    this.actions.add(new Vector<Action>());
-                    Vector<Sequence> startSeq = new Vector<Sequence>();
-                    startSeq.add(new Sequence());
-                    this.seqs.add(startSeq);
+                    final Sequence completed = currSequence;
+                    final int chain = this.updateChain;
+                    final boolean quiet = this.mon.isQuiet();
+                    this.lastAsyncUpdate = this.asyncUpdater.submit(new Runnable() {
+                            public void run()
+                            {
+                                //Be as quiet as the thread that queued this
+                                mon.setQuiet(quiet);
+                                asyncChain = chain;
+                                promoteSequence(0, completed);
+                            }
+                        });
+                }
+                else
+                {
+                    promoteSequence(level, currSequence);
                 }
-                    
-                //Add the new episode
-                Vector<Episode> parentEpList = epmems.elementAt(level + 1);
-                parentEpList.add(new SequenceEpisode(currSequence));
-                    
-                // this sequence has become an episode in our next level so make
-                // a recursive call to update.
-                update(level + 1);
             }
 
         }//if (ended current sequence)
@@ -430,6 +1096,118 @@ public class Ziggurat
 
     }//update
 
+    /**
+     * promoteSequence
+     *
+     * adds a newly completed sequence as a new episode at the next level up
+     * and then updates that level.
+     *
+     * @param level  the level of the completed sequence
+     * @param currSequence  the completed sequence
+     */
+    protected void promoteSequence(int level, Sequence currSequence)
+    {
+        this.mon.log("Creating a new level %d episode with sequence: ", level + 1);
+        this.mon.tab();
+        this.mon.log(currSequence);
+
+        //Make sure the parent level exists!
+        while (this.epmems.size() <= level + 1)
+        {
+            addLevel();
+        }
+                    
+        //Add the new episode.  If this is the first episode to contain this
+        //sequence, then record that in the sequence so the planner can find it
+        //quickly.
+        Vector<Episode> parentEpList = epmems.elementAt(level + 1);
+        SequenceEpisode newEp = new SequenceEpisode(currSequence);
+        parentEpList.add(newEp);
+        this.epIndexes.elementAt(level + 1).extend(currSequence.getID());
+        if (level == 0)
+        {
+            this.lvl0Positions.add(parentEpList.size() - 1, currSequence.length());
+        }
+        if (currSequence.getContainingEpisode() == null)
+        {
+            currSequence.setContainingEpisode(newEp);
+        }
+                    
+        // this sequence has become an episode in our next level so make a
+        // recursive call to update.
+        update(level + 1);
+    }//promoteSequence
+
+    /**
+     * recordUpdateLevel
+     *
+     * records that an update was completed at a given level (see {@link
+     * #lastUpdateLevel}).  An update at level 0 begins a new chain.  In async
+     * mode, a background update for an older chain must not overwrite the
+     * level recorded by a newer one.
+     */
+    protected synchronized void recordUpdateLevel(int level)
+    {
+        if (level == 0)
+        {
+            this.updateChain++;
+        }
+        else if ((this.asyncUpdater != null) && (this.asyncChain != this.updateChain))
+        {
+            return;
+        }
+
+        this.lastUpdateLevel = level;
+    }//recordUpdateLevel
+
+    /**
+     * canPromoteTo
+     *
+     * decides whether a sequence that was just completed at the level below a
+     * given level should become a new episode at the given level.  This is
+     * where the depth limit, the per-level memory caps and adaptive mode are
+     * enforced.
+     *
+     * @param level  the level that would receive the new episode
+     *
+     * @return true if the episode should be added
+     */
+    protected boolean canPromoteTo(int level)
+    {
+        if (level >= this.maxLevelDepth) return false;
+        if (level < FIRST_CAPPED_LEVEL) return true;
+
+        //A new level is only grown in adaptive mode if the level below it is
+        //reusing its sequences often enough to be worth summarizing
+        if (this.epmems.size() <= level)
+        {
+            if (this.minReuseRatio <= 0.0) return true;
+
+            SequenceTrie below = this.seqTries.elementAt(level - 1);
+            return (below.numCompleted() >= ADAPTIVE_MIN_SEQS)
+                && (below.getReuseRatio() >= this.minReuseRatio);
+        }
+
+        //An existing level stops growing once any of its caps is reached
+        if ((this.maxEpisodesPerLevel > 0)
+            && (this.epmems.elementAt(level).size() >= this.maxEpisodesPerLevel))
+        {
+            return false;
+        }
+        if ((this.maxActionsPerLevel > 0)
+            && (this.actions.elementAt(level).size() >= this.maxActionsPerLevel))
+        {
+            return false;
+        }
+        if ((this.maxSequencesPerLevel > 0)
+            && (this.seqTries.elementAt(level).size() >= this.maxSequencesPerLevel))
+        {
+            return false;
+        }
+
+        return true;
+    }//canPromoteTo
+
    /**
     * rewardAgent
     *
@@ -514,18 +1292,44 @@ public class Ziggurat
      */
     protected Plan initPlan()
     {
+        //Planning needs a consistent view of the higher levels
+        syncHierarchy();
+        
         //If there are no level 1 episodes yet then there's not enough data to
         //create a plan
         if (this.epmems.size() < 2) return null;
         
         this.mon.enter("initPlan");
 
+        //The level 0 search is the slowest so start it now if allowed
+        ForkJoinTask<SuffixAutomaton.Match> elementalSearch = null;
+        final AtomicBoolean stopSearch = new AtomicBoolean(false);
+        if (this.parallelOrientation)
+        {
+            elementalSearch = ForkJoinPool.commonPool().submit(new Callable<SuffixAutomaton.Match>() {
+                    public SuffixAutomaton.Match call()
+                    {
+                        return findElementalMatch(stopSearch);
+                    }
+                });
+        }
+
         //Try to figure out where I am.  I can't make plan without this.
         Route seedRoute = findOrientation();
-        if (seedRoute == null)
+        if ((seedRoute != null) && (elementalSearch != null))
+        {
+            //Higher levels take precedence.  The level 0 search may already
+            //be running so tell it to stop and wait for it to notice.
+            stopSearch.set(true);
+            elementalSearch.join();
+        }
+        else if (seedRoute == null)
         {
             //Try orienting via the level 0 episodes
-            seedRoute = findElementalOrientation();
+            SuffixAutomaton.Match match = (elementalSearch != null)
+                ? elementalSearch.join() : findElementalMatch(null);
+            this.numElementalSearches++;
+            seedRoute = findElementalOrientation(match);
             if (seedRoute == null)
             {
                 this.mon.exit("initPlan");
@@ -558,47 +1362,38 @@ public class Ziggurat
     }// initPlan
 
     /**
-     * findShortestRoute
-     *
-     * searches a given Vector<Route> to find the one that has the shortest
-     * number of elemental episodes
+     * class RouteCand
      *
-     * @param searchMe  the vector to search
-     * @param startPos  start searching at this index
-     *
-     * @return index of shortest route (or -1 if given an empty vector)
+     * a candidate route in {@link #findRoute}'s priority queue.  Candidates
+     * are ordered by their priority (their number of elemental episodes plus
+     * any estimate of the remaining length) and then by the order in which
+     * they were created.
      */
-    protected int findShortestRoute(Vector<Route> searchMe, int startPos)
+    protected static class RouteCand implements Comparable<RouteCand>
     {
-        if (searchMe.size() == 0) return -1;
-        
-        Route cand = searchMe.elementAt(startPos);
-        int candLen = cand.numElementalEpisodes();
-        int candPos = startPos;
-        for(int i = startPos; i < searchMe.size(); i++)
+        protected RouteNode node;
+        /** the {@link ActionGraph} node for the route's last sequence (-1 if
+         * it has no actions) */
+        protected int graphNode;
+        protected int length;
+        protected int priority;
+        protected int order;
+
+        public RouteCand(RouteNode node, int graphNode, int estimate, int order)
         {
-            Route possiblyShorter = searchMe.elementAt(i);
-            int psLen = possiblyShorter.numElementalEpisodes();
-
-            //If a shorter one is found, update cand, candLen and candPos
-            if (psLen < candLen)
-            {
-                cand = possiblyShorter;
-                candLen = psLen;
-                candPos = i;
-            }//if
-        }//for
-
-        return candPos;
-
-        
-    }//findShortestRoute
+            this.node = node;
+            this.graphNode = graphNode;
+            this.length = node.numElementalEpisodes();
+            this.priority = this.length + estimate;
+            this.order = order;
+        }
 
-    /** this version of findShortestRoute doesn't require a start position */
-    protected int findShortestRoute(Vector<Route> searchMe)
-    {
-        return findShortestRoute(searchMe, 0);
-    }
+        public int compareTo(RouteCand other)
+        {
+            if (this.priority != other.priority) return (this.priority < other.priority) ? -1 : 1;
+            return (this.order < other.order) ? -1 : ((this.order == other.order) ? 0 : 1);
+        }
+    }//class RouteCand
 
     /**
      * findContainingEpisode
@@ -624,10 +1419,13 @@ public class Ziggurat
     }//findContainingEpisode
 
     /** This version assumes you wish to search all episodes at the level above
-     *  the given sequence.
+     *  the given sequence.  Sequences created by {@link #update} already know
+     *  their containing episode so no search is needed for them.
      */
     protected Episode findContainingEpisode(Sequence seq)
     {
+        if (seq.getContainingEpisode() != null) return seq.getContainingEpisode();
+        
         int level = seq.getLevel();
         Vector<Episode> parentEps = this.epmems.elementAt(level + 1);
 
@@ -676,8 +1474,24 @@ public class Ziggurat
     /**
      * findRoute
      *
-     * This method uses a breadth-first search to find a shortest path from a
-     * given start state to a goal state at a given level.  
+     * This method uses a best-first (Dijkstra, A* or bidirectional) search to
+     * find a shortest path from a given start state to a goal state at a given
+     * level.  (See {@link #setPlanner}.)
+     *
+     * Candidate routes are kept as {@link RouteNode} chains so that extending
+     * a candidate doesn't require copying it.  Only the selected route is
+     * converted back to a full Route.  The candidates wait in a priority
+     * queue ordered by their length in elemental episodes.  Only the shortest
+     * candidate found so far that ends with a given sequence is kept since
+     * any extension of a longer one would also be longer.
+     * Candidates are extended by following the edges of the level's {@link
+     * ActionGraph}.  A* also orders candidates by their shortest remaining
+     * length according to the level's {@link RewardField}.  This estimate
+     * never exceeds the true remaining length so the route A* finds is just
+     * as short.
+     *
+     * <p>The route found from each sequence is kept in {@link #planCache}
+     * until the level's graph changes (see {@link #setPlanCacheSize}).
      *
      * CAVEAT:  initRoute does not verify that the given sequence and route are
      *          valid/allocated
@@ -692,110 +1506,507 @@ public class Ziggurat
         
         // can't build plan without level+1 actions
         int level = seedRoute.getLevel();
-        assert(level + 1 < MAX_LEVEL_DEPTH);
+        assert(level + 1 < this.maxLevelDepth);
+
+        ActionGraph graph = this.actionGraphs.elementAt(level);
+        this.lastPlanExpansions = 0;
+        this.lastPlanRepairs = 0;
+        this.planStartTime = System.nanoTime();
+        this.planBudgetExhausted = false;
+
+        //Reuse the route found from this sequence before if the level's graph
+        //hasn't changed since
+        int seqId = seedRoute.getLastSeq().getID();
+        PlanCache.Entry cached = null;
+        if (this.planCache != null)
+        {
+            cached = this.planCache.get(level, seqId, graph.getGeneration());
+        }
+
+        RouteNode found = null;
+        if (cached != null)
+        {
+            this.mon.log("Reusing the route found from this sequence before");
+            if (cached.seqs != null)
+            {
+                found = new RouteNode(seedRoute);
+                for(Sequence seq : cached.seqs)
+                {
+                    found = found.extend(seq);
+                }
+            }
+        }
+        else
+        {
+            //Only the changes that the level's reward field hasn't caught up
+            //with yet need to be repaired
+            long repaired = graph.getRewardField().getNumRepaired();
+            found = searchRoute(seedRoute, graph);
+            this.lastPlanRepairs = graph.getRewardField().getNumRepaired() - repaired;
+
+            //A search that was cut short may not have found the shortest route
+            if ((this.planCache != null) && (! this.planBudgetExhausted))
+            {
+                this.planCache.put(level, seqId, graph.getGeneration(),
+                                   (found == null) ? null : found.getChain());
+            }
+        }//else
+
+        //If we reach this point with no route, we failed to find one
+        if (found == null)
+        {
+            this.mon.exit("findRoute");
+            return null;
+        }
+
+        Route result = found.toRoute();
+        this.mon.log("Selected this route:");
+        this.mon.log(result);
+        this.mon.exit("findRoute");
+        return result;
+    }//findRoute
+
+    /**
+     * searchRoute
+     *
+     * is a helper method for {@link #findRoute} that finds a route with the
+     * selected {@link Planner}
+     *
+     * @param seedRoute  a starting Route containing just the first sequence
+     * @param graph      the level's action graph
+     *
+     * @return the last node of the route or null if none was found
+     */
+    protected RouteNode searchRoute(Route seedRoute, ActionGraph graph)
+    {
+        int seedNode = graph.findNode(seedRoute.getLastSeq());
+
+        //The level's reward field already knows the shortest route
+        if (this.planner == Planner.REWARD_FIELD)
+        {
+            return followRewardField(seedRoute, graph, seedNode);
+        }
+        else if (this.planner == Planner.BIDIRECTIONAL)
+        {
+            RouteNode result = findRouteBidirectional(seedRoute, graph, seedNode);
+            if (result != null)
+            {
+                this.mon.log("Found a route to goal after examining %d candidates",
+                             this.lastPlanExpansions);
+            }
+            return result;
+        }
+
+        //This queue contains all the incomplete routes that will be
+        //considered by this routine as it builds its route
+        PriorityQueue<RouteCand> candRoutes = new PriorityQueue<RouteCand>();
+        int numCands = 0;
+
+        //A* needs an up to date field for its estimates
+        boolean aStar = (this.planner == Planner.A_STAR);
+        if (aStar) graph.getRewardField().settle();
+        int seedEst = aStar ? estimateRemaining(graph, seedRoute.getLastSeq(), seedNode) : 0;
+        if (seedEst == RewardField.UNREACHABLE)
+        {
+            this.mon.log("no reward can be reached from the seed sequence");
+            return null;
+        }
+
+        RouteCand seedCand = new RouteCand(new RouteNode(seedRoute), seedNode, seedEst, numCands++);
+        candRoutes.add(seedCand);
+
+        //The length of the shortest candidate so far that ends with each
+        //sequence (indexed by graph node)
+        int[] bestLens = new int[graph.numNodes()];
+        Arrays.fill(bestLens, Integer.MAX_VALUE);
+        if (seedNode != -1) bestLens[seedNode] = seedCand.length;
+
+        /*--------------------------------------------------------------------------
+         * Expand the candidate routes shortest first until the shortest
+         * route to the goal is found.
+         */
+        int i = 0;      // number of candidates examined
+        while(! candRoutes.isEmpty())
+        {
+            this.mon.think();  //to track "thinking time"
+
+            //To avoid long delays, give up on planning when out of budget
+            if (isOverPlanBudget())
+            {
+                this.planBudgetExhausted = true;
+                break;
+            }
+
+            //Retrieve the shortest route that hasn't been examined yet.  Skip
+            //it if a shorter route to the same sequence has been found since
+            //it was queued.
+            RouteCand next = candRoutes.poll();
+            RouteNode cand = next.node;
+            if ((next.graphNode != -1) && (next.length > bestLens[next.graphNode])) continue;
+
+            //log the current shortest candidate
+            this.mon.log(""); //to reset after the dots (see above)
+            this.mon.log("examining next shortest candidate #%d of size %d:",
+                         i, cand.numElementalEpisodes());
+            i++;
+            this.lastPlanExpansions++;
+            this.totalPlanExpansions++;
+            this.mon.log(cand.getLastSeq());
+       
+            //SUCCESS! If the last action in this route contains the goal
+            //state, we're done.  Build the full route from this candidate
+            //and exit the loop.
+            Sequence lastSeq = cand.getLastSeq();
+            if (lastSeq.containsReward())
+            {
+                this.mon.log("Found a route to goal after examining %d candidates", i);
+                return cand;
+            }//if
+
+            /*----------------------------------------------------------------------
+             * Search for sequences to find any that meet both these criteria:
+             * 1.  The sequence is the right-hand-side of an action at
+             *     level+1 such that the left-hand-side sequence is the
+             *     one most recently added to the candidate route
+             * 2.  the sequence is not already in the candidate route
+             *
+             * Then build new candidate routes by adding all sequences to the
+             * current candidate route that meet these criteria .
+             *
+             * TODO:  convert this to a subroutine
+             */
+
+            //The edges out of this sequence are the actions whose LHS
+            //matches the current candidates' RHS
+            int node = next.graphNode;
+            if (node == -1) continue;
+            
+            //Create a new candidate route by extending the current candidate
+            //with each of those actions
+            for(int edge = 0; edge < graph.numEdges(node); edge++)
+            {
+                //Extract the sequence associated with the rhs of this matching
+                //action
+                int target = graph.getTarget(node, edge);
+                Sequence rhsSeq = graph.getSequence(target);
+
+                //Verify this sequence isn't already in the route
+                if (cand.contains(rhsSeq)) continue;
+
+                //Skip sequences that can't lead to a reward
+                int est = aStar ? estimateRemaining(graph, rhsSeq, target) : 0;
+                if (est == RewardField.UNREACHABLE) continue;
+
+                //Verify that this is the shortest route to the sequence so far
+                RouteCand extCand = new RouteCand(cand.extend(rhsSeq), target, est, numCands);
+                if (bestLens[target] <= extCand.length) continue;
+
+                //log the new candidate
+                this.mon.logPart("extending candidate with action: ");
+                this.mon.log(graph.getAction(node, edge));
+       
+                //If we've reached this point, then we can create a new candidate
+                //route that is an extension of the current one
+                bestLens[target] = extCand.length;
+                candRoutes.add(extCand);
+                numCands++;
+            }//for
+
+            this.mon.log("done searching for ways to extend from sequence: ");
+            this.mon.tab();
+            this.mon.log(lastSeq);
+       
+        }//for
+
+        //If the search was cut short settle for the best route so far
+        if (this.planBudgetExhausted)
+        {
+            this.mon.log("Out of planning budget after examining %d candidates", i);
+            return findBestCandidate(candRoutes, bestLens);
+        }
+
+        //If we reach this point, we failed to find a route
+        return null;
+    }//searchRoute
+
+    /**
+     * isOverPlanBudget
+     *
+     * @return true if the current route search has used up its time or
+     *         candidates (see {@link #setPlanBudget})
+     */
+    protected boolean isOverPlanBudget()
+    {
+        if ((this.planCandBudget > 0) && (this.lastPlanExpansions >= this.planCandBudget))
+        {
+            return true;
+        }
+        return (this.planTimeBudget > 0)
+            && (System.nanoTime() - this.planStartTime >= this.planTimeBudget);
+    }//isOverPlanBudget
+
+    /**
+     * findBestCandidate
+     *
+     * is a helper method for {@link #searchRoute}.  When a search runs out of
+     * budget it selects the shortest queued candidate that reaches a reward
+     * or, failing that, the queued candidate that the search would have
+     * examined next.
+     *
+     * @param candRoutes  the queued candidates
+     * @param bestLens    the length of the shortest candidate that ends with
+     *                    each sequence
+     *
+     * @return the last node of the selected route or null if there is no
+     *         candidate besides
+     *         the seed
+     */
+    protected RouteNode findBestCandidate(PriorityQueue<RouteCand> candRoutes, int[] bestLens)
+    {
+        RouteCand best = null;
+        RouteCand next = null;
+        for(RouteCand cand : candRoutes)
+        {
+            //Skip candidates that a shorter one has replaced
+            if ((cand.graphNode != -1) && (cand.length > bestLens[cand.graphNode])) continue;
+            if (cand.node.getParent() == null) continue;
+
+            if (cand.node.getLastSeq().containsReward())
+            {
+                if ((best == null) || (cand.length < best.length)) best = cand;
+            }
+            else if ((next == null) || (cand.compareTo(next) < 0))
+            {
+                next = cand;
+            }
+        }//for
+
+        if (best != null) return best.node;
+        return (next == null) ? null : next.node;
+    }//findBestCandidate
+
+    /**
+     * estimateRemaining
+     *
+     * is a helper method for {@link #searchRoute}.  It uses a level's (settled)
+     * {@link RewardField} to calculate how many more elemental episodes a
+     * route that ends with a given sequence needs to reach a reward.
+     *
+     * @param graph  the level's action graph
+     * @param seq    the sequence
+     * @param node   the sequence's graph node (or -1)
+     *
+     * @return the remaining length (which may be negative since the RHS of the
+     *         route's last action is replaced) or {@link
+     *         RewardField#UNREACHABLE} if no reward can be reached
+     */
+    protected int estimateRemaining(ActionGraph graph, Sequence seq, int node)
+    {
+        if (seq.containsReward()) return 0;
+        if (node == -1) return RewardField.UNREACHABLE;
+
+        RewardField field = graph.getRewardField();
+        int dist = field.getDistance(node);
+        if (dist == RewardField.UNREACHABLE) return dist;
+        return dist - field.finalLength(node);
+    }//estimateRemaining
+
+    /**
+     * findRouteBidirectional
+     *
+     * is a helper method for {@link #searchRoute}.  It finds the shortest route
+     * from a seed route to a reward with two Dijkstra searches that take turns
+     * expanding a sequence.  One searches forward from the seed's sequence
+     * along the edges of the level's {@link ActionGraph}.  The other searches
+     * backward along the same edges from every sequence that contains a
+     * reward.  Once the two frontiers are far enough apart that no unexamined
+     * sequence can lie on a shorter route than the best one where they meet,
+     * that route is the shortest.
+     *
+     * <p>Lengths are measured as in {@link RewardField}, so like the other
+     * searches a route never passes through a reward.  If the search runs out
+     * of budget (see {@link #setPlanBudget}) the shortest route where the
+     * searches have met so far is returned.
+     *
+     * @param seedRoute  a starting Route containing just the first sequence
+     * @param graph      the level's action graph
+     * @param seedNode   the graph node for the seed's sequence (or -1)
+     *
+     * @return the last node of the route or null if no reward can be reached
+     */
+    protected RouteNode findRouteBidirectional(Route seedRoute, ActionGraph graph, int seedNode)
+    {
+        RouteNode route = new RouteNode(seedRoute);
+        if (seedRoute.getLastSeq().containsReward()) return route;
+        if (seedNode == -1) return null;
+
+        //The length of the shortest route found so far from the seed to each
+        //sequence and from each sequence to a reward.  Each search also
+        //records the next sequence back toward where it started.
+        int numNodes = graph.numNodes();
+        int[] fwdDist = new int[numNodes];
+        int[] bwdDist = new int[numNodes];
+        int[] fwdPrev = new int[numNodes];
+        int[] bwdNext = new int[numNodes];
+        Arrays.fill(fwdDist, Integer.MAX_VALUE);
+        Arrays.fill(bwdDist, Integer.MAX_VALUE);
+        Arrays.fill(fwdPrev, -1);
+        Arrays.fill(bwdNext, -1);
+
+        //Each queue entry packs a length with its node (see RewardField)
+        PriorityQueue<Long> fwdQueue = new PriorityQueue<Long>();
+        PriorityQueue<Long> bwdQueue = new PriorityQueue<Long>();
+        fwdDist[seedNode] = 0;
+        fwdQueue.add((long)seedNode);
+        RewardField field = graph.getRewardField();
+        for(int node = 0; node < numNodes; node++)
+        {
+            if (! graph.getSequence(node).containsReward()) continue;
+            bwdDist[node] = field.finalLength(node);
+            bwdQueue.add(((long)bwdDist[node] << 32) | node);
+        }
 
-        //This vector contains all the incomplete routes that have been or will
-        //be considered by this routine as it builds its route
-        Vector<Route> candRoutes = new Vector<Route>();
-        candRoutes.add(seedRoute);
+        //The shortest route where the searches meet
+        int bestLen = Integer.MAX_VALUE;
+        int meetNode = -1;
 
-        /*--------------------------------------------------------------------------
-         * Iterate over the candidate routes expanding them until the shortest
-         * route to the goal is found (breadth-first search).  (Note: the size
-         * of candRoutes will grow as the search continues.)
-         */
-        for(int i = 0; i < candRoutes.size(); i++)
+        while((! fwdQueue.isEmpty()) && (! bwdQueue.isEmpty()))
         {
             this.mon.think();  //to track "thinking time"
 
-            //To avoid long delays, give up on planning after examining N candidate routes
-            if ((MAX_ROUTE_CANDS > 0) && (i > MAX_ROUTE_CANDS))
+            //To avoid long delays, give up on planning when out of budget
+            if (isOverPlanBudget())
             {
+                this.planBudgetExhausted = true;
                 break;
             }
 
-            //Find the shortest route that hasn't been examined yet and swap it
-            //to the i-th position in the array
-            int candPos = findShortestRoute(candRoutes, i);
-            Route cand = candRoutes.elementAt(candPos);
-            if (candPos != i)
-            {
-                Route tmp = candRoutes.elementAt(i);
-                candRoutes.set(i, cand);
-                candRoutes.set(candPos, tmp);
-            }
+            //No route through an unexamined sequence can be shorter
+            long fwdTop = fwdQueue.peek() >>> 32;
+            long bwdTop = bwdQueue.peek() >>> 32;
+            if (fwdTop + bwdTop >= bestLen) break;
 
-            //log the current shortest candidate
-            this.mon.log(""); //to reset after the dots (see above)
-            this.mon.log("examining next shortest candidate #%d of size %d:",
-                         i, cand.numElementalEpisodes());
-            this.mon.log(cand);
-       
-            //SUCCESS! If the last action in this route contains the goal
-            //state, we're done.  Copy the details of this route to the newRoute
-            //struct we were given and exit the loop.
-            Sequence lastSeq = cand.getLastSeq();
-            if (lastSeq.containsReward())
+            this.lastPlanExpansions++;
+            this.totalPlanExpansions++;
+
+            //Expand the smaller frontier
+            if (fwdQueue.size() <= bwdQueue.size())
             {
-                this.mon.log("Selected this route to goal:");
-                this.mon.log(cand);
-                this.mon.exit("findRoute");
-                return cand;
-            }//if
+                long entry = fwdQueue.poll();
+                int node = (int)entry;
+                if ((int)(entry >>> 32) != fwdDist[node]) continue;
 
-            /*----------------------------------------------------------------------
-             * Search for sequences to find any that meet both these criteria:
-             * 1.  The sequence is the right-hand-side of an action at
-             *     level+1 such that the left-hand-side sequence is the
-             *     one most recently added to the candidate route
-             * 2.  the sequence is not already in the candidate route
-             *
-             * Then build new candidate routes by adding all sequences to the
-             * current candidate route that meet these criteria .
-             *
-             * TODO:  convert this to a subroutine
-             */
+                //Routes stop at the first reward
+                if (graph.getSequence(node).containsReward()) continue;
 
-            //Find all actions whose LHS matches the current candidates' RHS
-            Episode lastSeqEp = findContainingEpisode(lastSeq);
-            Vector<Action> extensions = findCousinList(lastSeqEp);
-            if (extensions == null) continue;
-            
-            //Create a new candidate route by extending the current candidate
-            //with each action in the extensions list
-            for(Action act : extensions)
+                for(int edge = 0; edge < graph.numEdges(node); edge++)
+                {
+                    int target = graph.getTarget(node, edge);
+                    int newDist = fwdDist[node] + graph.getWeight(node, edge);
+                    if (newDist >= fwdDist[target]) continue;
+                    fwdDist[target] = newDist;
+                    fwdPrev[target] = node;
+                    fwdQueue.add(((long)newDist << 32) | target);
+
+                    if ((bwdDist[target] != Integer.MAX_VALUE)
+                        && (newDist + bwdDist[target] < bestLen))
+                    {
+                        bestLen = newDist + bwdDist[target];
+                        meetNode = target;
+                    }
+                }//for
+            }
+            else
             {
-                //Extract the sequence associated with the rhs of this matching
-                //action
-                Episode rhs = act.getRHS();
-                Sequence rhsSeq = ((SequenceEpisode)rhs).getSequence();
+                long entry = bwdQueue.poll();
+                int node = (int)entry;
+                if ((int)(entry >>> 32) != bwdDist[node]) continue;
 
-                //Verify this sequence isn't already in the route
-                if (cand.contains(rhsSeq)) continue;
+                for(int i = 0; i < graph.numSources(node); i++)
+                {
+                    //Routes never pass through a reward
+                    int source = graph.getSource(node, i);
+                    if (graph.getSequence(source).containsReward()) continue;
+
+                    int edge = graph.getSourceEdge(node, i);
+                    int newDist = graph.getWeight(source, edge) + bwdDist[node];
+                    if (newDist >= bwdDist[source]) continue;
+                    bwdDist[source] = newDist;
+                    bwdNext[source] = node;
+                    bwdQueue.add(((long)newDist << 32) | source);
+
+                    if ((fwdDist[source] != Integer.MAX_VALUE)
+                        && (fwdDist[source] + newDist < bestLen))
+                    {
+                        bestLen = fwdDist[source] + newDist;
+                        meetNode = source;
+                    }
+                }//for
+            }//else
+        }//while
 
-                //log the new candidate
-                this.mon.logPart("extending candidate with action: ");
-                this.mon.log(act);
-       
-                //If we've reached this point, then we can create a new candidate
-                //route that is an extension of the current one
-                Route newCand = (Route)cand.clone();
-                newCand.add(rhsSeq);
-       
-                //Add this new candidate route to the candRoutes array
-                candRoutes.add(newCand);
-            }//for
+        if (meetNode == -1)
+        {
+            if (this.planBudgetExhausted) this.mon.log("Out of planning budget before the searches met");
+            else this.mon.log("no reward can be reached from the seed sequence");
+            return null;
+        }
 
-            this.mon.log("done searching for ways to extend from sequence: ");
-            this.mon.tab();
-            this.mon.log(lastSeq);
-       
-        }//for
+        //Build the route: back to the seed from where the searches met and
+        //then on to the reward
+        Vector<Integer> path = new Vector<Integer>();
+        for(int node = meetNode; node != seedNode; node = fwdPrev[node])
+        {
+            path.add(0, node);
+        }
+        for(int node = bwdNext[meetNode]; node != -1; node = bwdNext[node])
+        {
+            path.add(node);
+        }
+        for(int node : path)
+        {
+            route = route.extend(graph.getSequence(node));
+        }
 
-        //If we reach this point, we failed to find a route
-        this.mon.exit("findRoute");
-        return null;
-    }//findRoute
+        return route;
+    }//findRouteBidirectional
+
+    /**
+     * followRewardField
+     *
+     * is a helper method for {@link #searchRoute}.  It builds the shortest route
+     * from a seed route to a reward by following the first step that the
+     * level's {@link RewardField} has recorded for each sequence.
+     *
+     * @param seedRoute  a starting Route containing just the first sequence
+     * @param graph      the level's action graph
+     * @param seedNode   the graph node for the seed's sequence (or -1)
+     *
+     * @return the last node of the route or null if no reward can be reached
+     */
+    protected RouteNode followRewardField(Route seedRoute, ActionGraph graph, int seedNode)
+    {
+        RouteNode route = new RouteNode(seedRoute);
+        if (seedRoute.getLastSeq().containsReward()) return route;
+        if (seedNode == -1) return null;
+
+        RewardField field = graph.getRewardField();
+        if (! field.isReachable(seedNode))
+        {
+            this.mon.log("no reward can be reached from the seed sequence");
+            return null;
+        }
+
+        //Shortest routes never repeat a sequence so this always ends
+        int node = seedNode;
+        for(int edge = field.getNextEdge(node); edge != -1; edge = field.getNextEdge(node))
+        {
+            node = graph.getTarget(node, edge);
+            route = route.extend(graph.getSequence(node));
+        }
+
+        return route;
+    }//followRewardField
 
     /**
      * findOrientation
@@ -843,6 +2054,11 @@ public class Ziggurat
      *
      * @see #initPlan
      * 
+     * <p>The search uses each level's {@link SuffixAutomaton} so it takes
+     * constant time at each level regardless of how many episodes there are.
+     * If the longest match occurs more than once, the earliest occurrence is
+     * used.
+     *
      * <p>NOTE:  This method does not search level 0 episodes.
      *           See {@link #findElementalOrientation}
      *
@@ -863,32 +2079,24 @@ public class Ziggurat
         {
             this.mon.log("searching Level %d", level);
    
-            //Set the current episode list and its size for this iteration
+            //Set the current episode list for this iteration
             currLevelEpMem = this.epmems.elementAt(level);
-            int lastIndex = currLevelEpMem.size() - 1;
 
-            //starting with the penultimate level iterate backwards looking for a
-            //subsequence that matches the current position
-            for(int i = lastIndex - 1; i >= 0; i--)
-            {
-                //Count the length of the match at this point
-                int matchLen = 0;
-                while(currLevelEpMem.elementAt(i-matchLen).equals(
-                          currLevelEpMem.elementAt(lastIndex - matchLen)))
-                {
-                    matchLen++;
-
-                    //don't fall off the edge
-                    if (i - matchLen < 0) break;
-                }
+            //The longest series of episodes that ends with the most recent
+            //episode and also ended earlier
+            SuffixAutomaton epIndex = this.epIndexes.elementAt(level);
+            bestMatchLen = epIndex.getRepeatedSuffixLength();
+            bestMatchIndex = epIndex.getRepeatedSuffixEnd();
 
-                //See if we've found a new best match
-                if (matchLen > bestMatchLen)
-                {
-                    bestMatchLen = matchLen;
-                    bestMatchIndex = i;
-                }
-            }//for
+            //See if an approximate match does better
+            ApproximateMatcher.Match approx = findApproximateMatch(level, bestMatchLen);
+            if (approx != null)
+            {
+                this.mon.log("Approximate match of length %d with %d errors at index %d is better than the exact match of length %d",
+                             approx.length(), approx.errors, approx.end, bestMatchLen);
+                bestMatchLen = approx.length();
+                bestMatchIndex = approx.end;
+            }
 
             //If any match was found at this level, then stop searching
             if (bestMatchLen > 0) break;
@@ -922,6 +2130,42 @@ public class Ziggurat
    
     }//findOrientation
 
+    /**
+     * findApproximateMatch
+     *
+     * is a helper method for {@link #findOrientation}.  It looks for a past
+     * series of episodes at a given level that matches the most recent ones
+     * (see {@link #setApproximateOrientation}).
+     *
+     * @param level     the level to search
+     * @param exactLen  the length of the best exact match at this level
+     *
+     * @return a match that spans more past episodes than the exact match or
+     *         null if there is none or approximate orientation is off
+     */
+    protected ApproximateMatcher.Match findApproximateMatch(int level, int exactLen)
+    {
+        if (this.approxMaxErrors == 0) return null;
+
+        //The window can't include the whole text or there's nothing left to
+        //search.  An exact match that covers it can't be beaten.
+        SuffixAutomaton epIndex = this.epIndexes.elementAt(level);
+        int window = Math.min(this.approxWindow, epIndex.length() - 1);
+        if ((window <= exactLen) || (window < 1)) return null;
+
+        //Only allow matches that beat the exact one and that end before the
+        //window begins.  (Otherwise the window could match itself shifted by
+        //a deletion.)
+        int limit = epIndex.length() - window - 1;
+        if (limit < 0) return null;
+        int maxErrors = Math.min(this.approxMaxErrors, window - exactLen - 1);
+        int[] text = epIndex.getText();
+        ApproximateMatcher matcher = new ApproximateMatcher(text, epIndex.length() - window, window);
+        ApproximateMatcher.Match approx = matcher.findBest(text, limit, maxErrors);
+        if ((approx == null) || (approx.length() <= exactLen)) return null;
+        return approx;
+    }//findApproximateMatch
+
     /**
      * findElementalOrientation
      *
@@ -932,8 +2176,12 @@ public class Ziggurat
      * sequence that corresponds to the end of the match.  The route is built
      * from the sequence but begins where the match left off
      *
-     * <p>Note: This method is much more expensive than {@link #findOrientation}
-     * and should only be called when that method fails.
+     * <p>The match is found with the level 0 {@link SuffixAutomaton} and
+     * translated into a level 1 episode and offset with {@link
+     * #lvl0Positions}, so neither a scan of the episodes nor a walk of the
+     * level 1 sequences is needed.  Only level 0 episodes that are already
+     * part of a level 1 episode can be matched.  If the longest match occurs
+     * more than once, the earliest occurrence is used.
      *
      * @arg offset is the index of the action in the returned sequence that a new
      * plan should start with
@@ -942,69 +2190,67 @@ public class Ziggurat
      *         match
      */
     protected Route findElementalOrientation()
+    {
+        return findElementalOrientation(findElementalMatch(null));
+    }//findElementalOrientation
+
+    /**
+     * findElementalMatch
+     *
+     * is a helper method for {@link #findElementalOrientation}.  It finds the
+     * longest series of level 0 episodes that ends with the newest episode and
+     * also ends at an earlier position that has been mapped to a level 1
+     * episode.  It doesn't log anything so it can be run in the background.
+     *
+     * @param stop  if this is set the search gives up at its next step (may
+     *              be null)
+     *
+     * @return the match (of length zero if there is none) or null if the
+     *         level 0 index is out of date or the search was stopped
+     */
+    protected SuffixAutomaton.Match findElementalMatch(AtomicBoolean stop)
     {
         Vector<Episode> level0Eps = this.epmems.elementAt(0);
+        SuffixAutomaton epIndex = this.epIndexes.elementAt(0);
+        int limit = this.lvl0Positions.size() - 1;
+        ElementalEpisode nowEp = (ElementalEpisode)level0Eps.lastElement();
+        if (epIndex.length() == level0Eps.size())
+        {
+            //The newest episode is already in the index
+            return epIndex.findEarlierSuffix(limit, stop);
+        }
+        else if (epIndex.length() == level0Eps.size() - 1)
+        {
+            //The newest episode's command isn't final yet so it isn't in the
+            //index.  If it has never been seen before nothing can match it.
+            int nowId = this.symbols.findEpisodeId(nowEp);
+            if (nowId == -1) return new SuffixAutomaton.Match(0, -1);
+            return epIndex.findEarlierSuffix(nowId, limit, stop);
+        }
+
+        return null;
+    }//findElementalMatch
+
+    /**
+     * findElementalOrientation
+     *
+     * builds the route for {@link #findElementalOrientation()} from a match
+     * found by {@link #findElementalMatch}.
+     */
+    protected Route findElementalOrientation(SuffixAutomaton.Match match)
+    {
         Vector<Episode> level1Eps = this.epmems.elementAt(1);
-        int lastIndex = level0Eps.size()-1; // where the match begins
-        int bestMatchLen = 0;         // length of the best match so far
-        int bestMatchIndex = -1;    // index of level 1 episode that is best match
-        int bestMatchOffset = -1;   // index of first matching action in best match
         
         //There must be at least two level 1 episodes to do a match
         if (level1Eps.size() < 2) return null;
         this.mon.enter("findElementalOrientation");
 
-        /*======================================================================
-         * Find the best match by comparing the level 0 episode sequence to
-         * itself.  We do this by iterating over the level 1 episodes so that
-         * when a match is found it is "oriented" in the level 1 episodes.
-         * ----------------------------------------------------------------------
-         */
-        int lastLevel0EpIndex = level0Eps.size() - 1;
-
-        //level0Index will be used to track the index of the current level 0
-        //index.  This index needs to be initialized to refer to to the last
-        //level 0 episode in the last SequenceEpisode at level 1.
-        Sequence lastLevel0Seq = this.seqs.elementAt(0).lastElement();
-        int level0Index = level0Eps.size() - lastLevel0Seq.length() - 2;
-        for(int i = level1Eps.size() - 1; i >= 0; i--)
-        {
-            SequenceEpisode currLvl1Ep = (SequenceEpisode)level1Eps.elementAt(i);
-            Vector<Action> seqActs = currLvl1Ep.getSequence().getActions();
-            for(int j = seqActs.size() - 1; j >= 0; j--)
-            {
-                Episode currEp = seqActs.elementAt(j).getLHS();
-                
-                //sanity check: the current episode at lvl 0 should match the
-                //one extracted via level 1
-                if(! level0Eps.elementAt(level0Index).equals(currEp))
-                {
-                    System.err.println("ERROR!  findElementalOrientation got out of sync.");
-                    System.exit(-3);
-                }
-
-                //Each matching episode extends the length of the overall match
-                int matchLen = 0;
-                while(level0Eps.elementAt(level0Index - matchLen).equals(
-                          level0Eps.elementAt(lastLevel0EpIndex - matchLen)))
-                {
-                    matchLen++;
-
-                    //don't fall off the edge
-                    if (level0Index - matchLen < 0) break;
-                }
-
-                //See if we've found a new best match
-                if (matchLen > bestMatchLen)
-                {
-                    bestMatchLen = matchLen;
-                    bestMatchIndex = i;
-                    bestMatchOffset = j;
-                }
+        if (match == null)
+        {
+            this.mon.log("findElementalOrientation failed: the level 0 index is out of date.");
+        }
 
-                level0Index--;
-            }//for
-        }//for
+        int bestMatchLen = (match == null) ? 0 : match.length;
 
         //Check for no match found
         if (bestMatchLen == 0)
@@ -1015,6 +2261,8 @@ public class Ziggurat
         }
 
         //***If we reach this point, we've found a match.
+        int bestMatchIndex = this.lvl0Positions.getParentIndex(match.end);
+        int bestMatchOffset = this.lvl0Positions.getOffset(match.end);
         Sequence bestMatch = ((SequenceEpisode)level1Eps.elementAt(bestMatchIndex)).getSequence();
         this.mon.log("Search Result of length %d at index %d and offset %d:  ",
                      bestMatchLen, bestMatchIndex + 1, bestMatchOffset);
@@ -1066,6 +2314,9 @@ public class Ziggurat
         //return value
         Vector<Location> result = new Vector<Location>();
 
+        //The orientation methods search the higher levels
+        syncHierarchy();
+
         //Try to create a Location obj for the Route at levels 1 and 0
         for(int level = 0; level < 1; ++level)
         {
@@ -1229,6 +2480,9 @@ public class Ziggurat
                 this.mon.exit("makeNewReplacement");
                 return null;
             }
+            //The actions above level 0 may still be updating
+            if (level > 0) syncHierarchy();
+            
             //Extract the next two actions from the plan at this level
             Action act1 = route.getActionAtIndex(route.getCurrActIndex());
             Action act2 = route.getActionAtIndex(route.getCurrActIndex() + 1);
@@ -1341,22 +2595,31 @@ public class Ziggurat
                 //you find one that creates a unique action
                 int numCmds = this.env.getNumCommands();
                 int startCmd = randGen.nextInt(numCmds);
+                ElementalEpisode lhsEp = (ElementalEpisode)candAct.getLHS();
+
+                //A command that has never been tried in the LHS sensor state
+                //can't be part of an existing action so prefer one of those.
+                int sensorId = this.symbols.findSensorId(lhsEp.getSensors());
+                int untriedCmd = this.cmdTracker.findUntried(sensorId, startCmd, numCmds);
                 for(int i = 0; i < numCmds; i++)
                 {
                     //Insert the candidate command into the candidate action
                     int candCmd = (startCmd + i) % numCmds;
-                    ElementalEpisode lhsEp = (ElementalEpisode)candAct.getLHS();
+                    if (untriedCmd != -1) candCmd = untriedCmd;
                     lhsEp.setCommand(candCmd);
 
                     this.mon.logPart("Considering this action for the replacement: ");
                     this.mon.log(candAct);
 
                     //If I've seen this one before try something else
-                    Action bestMatch = findClosestExistingAction(candAct, actList);
-                    if ( (bestMatch != null) && bestMatch.equals(candAct) )
+                    if (untriedCmd == -1)
                     {
-                        this.mon.log("action already exists (duplicate)");
-                        continue;
+                        Action bestMatch = findClosestExistingAction(candAct, actList);
+                        if ( (bestMatch != null) && bestMatch.equals(candAct) )
+                        {
+                            this.mon.log("action already exists (duplicate)");
+                            continue;
+                        }
                     }
 
                     //All checks passed. Success!  Add the replacement it creates to
@@ -1509,7 +2772,7 @@ public class Ziggurat
             ElementalEpisode nowEp = (ElementalEpisode)lvl0Eps.lastElement();
             if (! this.currPlan.nextStepIsValid(nowEp))
             {
-                this.mon.log("Current plan invalid.  Replanning...:");
+                this.mon.log("Current plan invalid.");
 
                 //"We now consecrate the bond of obedience."  The agent and all
                 //active replacements are now to be penalized for causing this
@@ -1517,8 +2780,13 @@ public class Ziggurat
                 penalizeDecEls();
                 penalizeAgent();
 
-                //Remove the bad plan so we can replan
-                this.currPlan = null;
+                //If the plan can't be rejoined nearby, remove the bad plan so
+                //we can replan
+                if (! repairPlan(nowEp))
+                {
+                    this.mon.log("Replanning...:");
+                    this.currPlan = null;
+                }
            
             }//if
             else                // The plan is going swimmingly! 
@@ -1599,13 +2867,40 @@ public class Ziggurat
      * make the resulting episode part of a unique sequence
      */
     protected int calcUniqueness(int cmd, int cap)
+    {
+        return calcUniqueness(cmd, cap, null);
+    }//calcUniqueness
+
+    /**
+     * calcUniqueness
+     *
+     * is {@link #calcUniqueness(int, int)} for use by parallel tasks.  Each
+     * task gives up as soon as its command can't beat one that another task
+     * has already finished with.
+     *
+     * @param best the lowest uniqueness any task has found so far (or null)
+     *
+     * @return the uniqueness of the command or, if the task gave up, a value
+     *         greater than best
+     */
+    protected int calcUniqueness(int cmd, int cap, AtomicInteger best)
     {
         int uniqueLen = 0;      // return value
         Vector<Episode> level0Eps = this.epmems.elementAt(0);
 
+        //The novelty filter can rule out long matches (or any match) without
+        //a scan.  The result is exact once it reaches that bound.
+        ElementalEpisode nowEp = (ElementalEpisode)level0Eps.lastElement();
+        int bound = getUniquenessBound(this.symbols.findSensorId(nowEp.getSensors()), cmd);
+        if (bound == 0) return 0;
+        cap = Math.min(cap, bound);
+
         //Iterate backwards over all positions in the current episode array
         for(int start = level0Eps.size()-2; start >= 0; start--)
         {
+            //Stop if another task has already found a better command
+            if ((best != null) && (uniqueLen > best.get())) break;
+
             //If the episode at this position doesn't have the right sensors or
             //command then it's a bust
             ElementalEpisode compEp = (ElementalEpisode)level0Eps.elementAt(start);
@@ -1639,8 +2934,121 @@ public class Ziggurat
         return uniqueLen;
         
     }//calcUniqueness
-    
-    
+
+    /**
+     * getUniquenessBound
+     *
+     * is a helper method for {@link #calcUniqueness}.  It uses {@link
+     * #noveltyFilter} to find an upper bound on a command's uniqueness.
+     *
+     * @param sensorId  the id of the current sensors (-1 if never seen)
+     * @param cmd       command under consideration
+     *
+     * @return the bound or {@link NoveltyFilter#NO_BOUND} if there is none
+     */
+    protected int getUniquenessBound(int sensorId, int cmd)
+    {
+        if (sensorId == -1) return 0;
+        if (this.noveltyFilter == null) return NoveltyFilter.NO_BOUND;
+
+        //The filter must contain every episode but the newest
+        if (this.noveltyFilter.size() != this.epmems.elementAt(0).size() - 1)
+        {
+            return NoveltyFilter.NO_BOUND;
+        }
+
+        return this.noveltyFilter.getUpperBound(sensorId, cmd);
+    }//getUniquenessBound
+
+    /**
+     * class UniquenessTask
+     *
+     * calculates the uniqueness of a range of commands in parallel for {@link
+     * #recommendCommand_ViaUniqueness}.  The range is given as offsets from a
+     * start command so that it matches the order of the sequential search.
+     * A command whose task gave up is given a value greater than the lowest
+     * one found so it will never be selected.
+     */
+    protected class UniquenessTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        protected int startCmd;
+        protected int lo;
+        protected int hi;
+        /** receives the uniqueness of each command (indexed by command) */
+        protected int[] results;
+        /** the lowest uniqueness found by any task so far */
+        protected AtomicInteger best;
+
+        public UniquenessTask(int startCmd, int lo, int hi, int[] results, AtomicInteger best)
+        {
+            this.startCmd = startCmd;
+            this.lo = lo;
+            this.hi = hi;
+            this.results = results;
+            this.best = best;
+        }
+
+        protected void compute()
+        {
+            //Split the range until each task has a single command
+            if (this.hi - this.lo > 1)
+            {
+                int mid = (this.lo + this.hi) / 2;
+                invokeAll(new UniquenessTask(this.startCmd, this.lo, mid, this.results, this.best),
+                          new UniquenessTask(this.startCmd, mid, this.hi, this.results, this.best));
+                return;
+            }
+
+            int cmd = (this.startCmd + this.lo) % this.results.length;
+            int uniqueLen = calcUniqueness(cmd, Integer.MAX_VALUE, this.best);
+            this.results[cmd] = uniqueLen;
+
+            //Lower the best value for the other tasks
+            int curr = this.best.get();
+            while((uniqueLen < curr) && (! this.best.compareAndSet(curr, uniqueLen)))
+            {
+                curr = this.best.get();
+            }
+        }
+    }//class UniquenessTask
+
+    /**
+     * calcAllUniqueness
+     *
+     * is a helper method for {@link #recommendCommand_ViaUniqueness}.  It
+     * uses {@link #noveltyTree} to calculate the result of {@link
+     * #calcUniqueness} for every command at once.  The tree is only exact up
+     * to its depth so this method gives up if every command exceeds it.
+     *
+     * @param numCmds  the number of commands
+     *
+     * @return the uniqueness of each command or null if it must be
+     *         calculated with {@link #calcUniqueness} instead.  A value that
+     *         equals the tree's depth is only a lower bound but (since some
+     *         other command is less) that command will never be selected.
+     */
+    protected int[] calcAllUniqueness(int numCmds)
+    {
+        //The tree must contain every episode but the newest
+        if (this.noveltyTree == null) return null;
+        Vector<Episode> level0Eps = this.epmems.elementAt(0);
+        if (this.noveltyTree.size() != level0Eps.size() - 1) return null;
+
+        ElementalEpisode nowEp = (ElementalEpisode)level0Eps.lastElement();
+        int sensorId = this.symbols.findSensorId(nowEp.getSensors());
+        int[] result = this.noveltyTree.calcUniqueness(sensorId, numCmds);
+
+        for(int i = 0; i < numCmds; i++)
+        {
+            if (result[i] < this.noveltyTree.getDepth()) return result;
+        }
+
+        return null;
+    }//calcAllUniqueness
+
+
     /**
      * recommendCommand_ViaUniqueness
      *
@@ -1657,6 +3065,26 @@ public class Ziggurat
         //Start the search from a random command
         int startCmd = randGen.nextInt(numCmds);
 
+        //A command that has never been tried here is wholly unique so the
+        //first one (starting from startCmd) is the answer
+        ElementalEpisode nowEp = (ElementalEpisode)this.epmems.elementAt(0).lastElement();
+        int sensorId = this.symbols.findSensorId(nowEp.getSensors());
+        int untriedCmd = this.cmdTracker.findUntried(sensorId, startCmd, numCmds);
+        if (untriedCmd != -1)
+        {
+            this.mon.log("Recommending a semi-random command: "
+                         + env.stringify(untriedCmd) + "(100.0%)");
+            return new Recommend(untriedCmd, 1.0);
+        }
+        int[] allUnique = calcAllUniqueness(numCmds);
+        if ((allUnique == null) && this.parallelUniqueness
+            && (this.epmems.elementAt(0).size() >= PARALLEL_MIN_EPISODES))
+        {
+            allUnique = new int[numCmds];
+            ForkJoinPool.commonPool().invoke(
+                new UniquenessTask(startCmd, 0, numCmds, allUnique, new AtomicInteger(Integer.MAX_VALUE)));
+        }
+
         //iterate through all commands and select the one that will yield the
         //most unique series of episodes
         int bestUnique = this.epmems.elementAt(0).size() + 1;
@@ -1664,7 +3092,8 @@ public class Ziggurat
         for(int i = 0; i < numCmds; i++)
         {
             int candCmd = (startCmd + i) % numCmds;
-            int uniqueLen = calcUniqueness(candCmd, bestUnique);
+            int uniqueLen = (allUnique != null) ? allUnique[candCmd]
+                                                : calcUniqueness(candCmd, bestUnique);
 
             //Is this the best so far?
             if (uniqueLen < bestUnique)
@@ -1690,6 +3119,140 @@ public class Ziggurat
 
     }//recommendCommand_ViaUniqueness
 
+    /**
+     * addSuccessor
+     *
+     * records a new level 0 action so that {@link #repairPlan} can follow it
+     */
+    protected void addSuccessor(Action act)
+    {
+        ElementalEpisode lhs = (ElementalEpisode)act.getLHS();
+        int sensorId = this.symbols.getSensorId(lhs.getSensors());
+        Vector<Action> succs = this.lvl0Successors.get(sensorId);
+        if (succs == null)
+        {
+            succs = new Vector<Action>();
+            this.lvl0Successors.put(sensorId, succs);
+        }
+        succs.add(act);
+    }//addSuccessor
+
+    /**
+     * repairPlan
+     *
+     * is called when the next step of the current plan is invalid.  It
+     * searches breadth first for a short series of level 0 actions that leads
+     * from the agent's current sensors back to a later step of the plan:
+     * either a later action in the level 0 route or the start of a later
+     * action in a higher level route.  Only actions that have never had a
+     * different outcome are followed.  If such a bridge is found the plan is
+     * rejoined there (see {@link Plan#rejoin}) so the rest of the plan, and
+     * any replacements applied to it, are kept.  Those replacements are made
+     * active again (the failure has already deactivated them) so that they
+     * share the credit if the repaired plan succeeds.
+     *
+     * @param nowEp  the agent's most recent episode
+     *
+     * @return true if the plan was repaired
+     */
+    protected boolean repairPlan(ElementalEpisode nowEp)
+    {
+        if ((this.planRepairDepth <= 0) || this.currPlan.needsRecalc()) return false;
+        int startId = this.symbols.findSensorId(nowEp.getSensors());
+        if (startId == -1) return false;
+
+        //Find where the plan could be rejoined from each sensor state: the
+        //earliest remaining action in the level 0 route that starts there or,
+        //failing that, the earliest later action at the lowest level above
+        //it.  Each is recorded as {level, index}.
+        HashMap<Integer,int[]> rejoinAt = new HashMap<Integer,int[]>();
+        for(int level = 0; level < this.currPlan.getNumLevels(); level++)
+        {
+            Route route = this.currPlan.getRoute(level);
+            int first = route.getCurrActIndex() + ((level == 0) ? 0 : 1);
+            for(int i = first; i < route.length(); i++)
+            {
+                //Find the first elemental episode of this action
+                Episode lhs = route.getActionAtIndex(i).getLHS();
+                while (lhs instanceof SequenceEpisode)
+                {
+                    Sequence seq = ((SequenceEpisode)lhs).getSequence();
+                    if (seq.length() == 0) break;
+                    lhs = seq.firstAction().getLHS();
+                }
+                if (! (lhs instanceof ElementalEpisode)) continue;
+
+                int sensorId = this.symbols.findSensorId(((ElementalEpisode)lhs).getSensors());
+                if (! rejoinAt.containsKey(sensorId))
+                {
+                    rejoinAt.put(sensorId, new int[] { level, i });
+                }
+            }//for
+        }//for
+
+        //Search outward from the current sensors for the nearest of those.
+        //Each sensor state reached records the action that first reached it.
+        HashMap<Integer,Action> reachedBy = new HashMap<Integer,Action>();
+        reachedBy.put(startId, null);
+        Vector<Integer> frontier = new Vector<Integer>();
+        frontier.add(startId);
+        int found = -1;
+        for(int depth = 0; (found == -1) && (depth <= this.planRepairDepth); depth++)
+        {
+            Vector<Integer> nextFrontier = new Vector<Integer>();
+            for(int sensorId : frontier)
+            {
+                if (rejoinAt.containsKey(sensorId))
+                {
+                    found = sensorId;
+                    break;
+                }
+                if ((depth == this.planRepairDepth) || (! this.lvl0Successors.containsKey(sensorId))) continue;
+
+                for(Action act : this.lvl0Successors.get(sensorId))
+                {
+                    if (act.isIndeterminate()) continue;
+                    ElementalEpisode rhs = (ElementalEpisode)act.getRHS();
+                    int nextId = this.symbols.findSensorId(rhs.getSensors());
+                    if ((nextId == -1) || reachedBy.containsKey(nextId)) continue;
+                    reachedBy.put(nextId, act);
+                    nextFrontier.add(nextId);
+                }
+            }//for
+            frontier = nextFrontier;
+        }//for
+
+        if (found == -1)
+        {
+            this.mon.log("No way back to the current plan was found.");
+            return false;
+        }
+
+        //Assemble the bridge
+        Vector<Action> acts = new Vector<Action>();
+        for(Action act = reachedBy.get(found); act != null; )
+        {
+            acts.add(0, act);
+            ElementalEpisode lhs = (ElementalEpisode)act.getLHS();
+            act = reachedBy.get(this.symbols.findSensorId(lhs.getSensors()));
+        }
+
+        //Rejoin the plan with it
+        int[] target = rejoinAt.get(found);
+        if (! this.currPlan.rejoin(target[0], target[1], acts)) return false;
+        this.numPlanRepairs++;
+
+        //Its replacements are back in use
+        for(Replacement repl : this.currPlan.getRepls())
+        {
+            if (! this.activeDecEls.contains(repl)) this.activeDecEls.add(repl);
+        }
+
+        this.mon.log("Plan repaired with a bridge of %d steps:", acts.size());
+        this.mon.log(this.currPlan);
+        return true;
+    }//repairPlan
+
     /**
      * recommendCommand_WithPlan
      *